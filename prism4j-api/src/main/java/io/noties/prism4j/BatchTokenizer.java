@@ -0,0 +1,121 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Tokenizes a batch of texts with a single {@link MatchContext} that is reset to each text
+ * (see {@link MatchContext#reset(CharSequence)}), so result is equal to tokenizing each text
+ * separately (nodes reference their own text), but grammar is compiled and matchers are created
+ * once per batch (or once per part of the batch when it is split between executor tasks).
+ *
+ * @see Prism4j#tokenizeAll(List, Prism4j.Grammar, Executor)
+ */
+abstract class BatchTokenizer {
+
+    // minimal length of texts that are tokenized by a single executor task
+    static final int MIN_PART_LENGTH = 16 * 1024;
+
+    @NotNull
+    static List<List<Prism4j.Node>> tokenize(
+            @NotNull Prism4j prism4j,
+            @NotNull List<? extends CharSequence> texts,
+            @NotNull Prism4j.Grammar grammar) {
+        final List<List<Prism4j.Node>> results = results(texts.size());
+        tokenize(prism4j, texts, 0, texts.size(), grammar, results);
+        return results;
+    }
+
+    @NotNull
+    static List<List<Prism4j.Node>> tokenize(
+            @NotNull Prism4j prism4j,
+            @NotNull List<? extends CharSequence> texts,
+            @NotNull Prism4j.Grammar grammar,
+            @NotNull Executor executor) {
+
+        final int size = texts.size();
+        final List<List<Prism4j.Node>> results = results(size);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        int from = 0;
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            length += texts.get(i).length();
+            if (length >= MIN_PART_LENGTH || i == size - 1) {
+                final int start = from;
+                final int end = i + 1;
+                futures.add(CompletableFuture.runAsync(
+                        () -> tokenize(prism4j, texts, start, end, grammar, results),
+                        executor));
+                from = end;
+                length = 0;
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+
+        return results;
+    }
+
+    // tokenizes texts in [from, to) range
+    private static void tokenize(
+            @NotNull Prism4j prism4j,
+            @NotNull List<? extends CharSequence> texts,
+            int from,
+            int to,
+            @NotNull Prism4j.Grammar grammar,
+            @NotNull List<List<Prism4j.Node>> results) {
+
+        if (from == to) {
+            return;
+        }
+
+        final Object event = Events.beginTokenize();
+        final MatchContext context = prism4j.context(texts.get(from));
+        final CompiledGrammar compiled = context.compile(grammar);
+        int length = 0;
+        int nodeCount = 0;
+        for (int i = from; i < to; i++) {
+            final CharSequence text = texts.get(i);
+            if (i > from) {
+                context.reset(text);
+            }
+            final List<Prism4j.Node> nodes = prism4j.tokenize(context, 0, text.length(), compiled);
+            results.set(i, nodes);
+            length += text.length();
+            if (event != null) {
+                nodeCount += Events.nodeCount(nodes);
+            }
+        }
+        context.finish();
+        if (event != null) {
+            Events.commitTokenize(event, grammar, length, nodeCount);
+        }
+    }
+
+    // filled by index (executor tasks set different elements)
+    @NotNull
+    private static List<List<Prism4j.Node>> results(int size) {
+        return new ArrayList<>(Collections.nCopies(size, null));
+    }
+
+    private BatchTokenizer() {
+    }
+}
@@ -0,0 +1,58 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Context of a tokenize call with a {@link TokenizeBudget}. When the budget runs out, the search
+ * in progress and all the following ones are treated as not found, so tokenization finishes
+ * right away with nodes that were created so far (the rest of the text stays plain text nodes).
+ */
+class BudgetMatchContext extends MatchContext {
+
+    private final BudgetText input;
+
+    // token and pattern whose search was in progress when budget ran out
+    private Prism4j.Token exhaustedToken;
+    private Prism4j.Pattern exhaustedPattern;
+
+    BudgetMatchContext(@NotNull CharSequence text, @NotNull TokenizeBudget budget) {
+        this(text, new BudgetText(text, budget));
+    }
+
+    private BudgetMatchContext(@NotNull CharSequence text, @NotNull BudgetText input) {
+        super(text, input);
+        this.input = input;
+    }
+
+    @Override
+    boolean search(@NotNull CompiledGrammar grammar, int pattern, int start, int end) {
+
+        if (exhaustedToken != null) {
+            return false;
+        }
+
+        try {
+            input.checkDeadline();
+            return super.search(grammar, pattern, start, end);
+        } catch (BudgetText.ExhaustedException e) {
+            int t = 0;
+            while (grammar.tokenPatterns[t + 1] <= pattern) {
+                t += 1;
+            }
+            exhaustedToken = grammar.tokens[t];
+            exhaustedPattern = exhaustedToken.patterns().get(pattern - grammar.tokenPatterns[t]);
+            return false;
+        }
+    }
+
+    @Nullable
+    Prism4j.Token exhaustedToken() {
+        return exhaustedToken;
+    }
+
+    @Nullable
+    Prism4j.Pattern exhaustedPattern() {
+        return exhaustedPattern;
+    }
+}
@@ -0,0 +1,80 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Text that pattern searches read when a tokenize call has a {@link TokenizeBudget}. Each read
+ * char is a step, so a search that backtracks catastrophically is interrupted (with
+ * {@link ExhaustedException}) as soon as the budget runs out, even though {@link java.util.regex.Matcher}
+ * cannot be interrupted otherwise. Time is checked only once per {@link #DEADLINE_CHECK_STEPS}
+ * steps (and before each search, see {@link #checkDeadline()}).
+ */
+class BudgetText implements CharSequence {
+
+    static final int DEADLINE_CHECK_STEPS = 1024;
+
+    private final CharSequence text;
+    private final boolean hasTimeout;
+    private final long timeoutNanos;
+    private final long started;
+
+    private long remaining;
+    private int untilDeadlineCheck = DEADLINE_CHECK_STEPS;
+
+    BudgetText(@NotNull CharSequence text, @NotNull TokenizeBudget budget) {
+        this.text = text;
+        this.hasTimeout = budget.hasTimeout();
+        this.timeoutNanos = budget.timeoutNanos();
+        this.started = System.nanoTime();
+        this.remaining = budget.steps();
+    }
+
+    /**
+     * @throws ExhaustedException if time is out
+     */
+    void checkDeadline() {
+        // compared as a difference, `nanoTime` can overflow
+        if (hasTimeout && System.nanoTime() - started > timeoutNanos) {
+            throw new ExhaustedException();
+        }
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--remaining < 0) {
+            throw new ExhaustedException();
+        }
+        if (--untilDeadlineCheck == 0) {
+            untilDeadlineCheck = DEADLINE_CHECK_STEPS;
+            checkDeadline();
+        }
+        return text.charAt(index);
+    }
+
+    @NotNull
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    static class ExhaustedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ExhaustedException() {
+            // thrown from deep inside of a matcher, stack trace is of no use
+            super(null, null, false, false);
+        }
+    }
+}
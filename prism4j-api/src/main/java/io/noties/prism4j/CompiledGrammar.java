@@ -0,0 +1,128 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Flattened (array based) form of a single {@link Prism4j.Grammar} that the tokenizer runs on.
+ * Patterns of all tokens are stored in the same arrays, patterns of token `i` occupy indices
+ * {@code [tokenPatterns[i], tokenPatterns[i + 1])}.
+ * <p>
+ * Compiled grammars of a frozen grammar graph are created once and reference each other
+ * directly (see {@link #compiledInsides}). Any other grammar is compiled (and its `inside`
+ * grammars are resolved) for each tokenize call, as it can be modified between calls.
+ * <p>
+ * Token types and aliases are kept as strings (not interned to ids): nodes are created with
+ * these strings, so ids would only be looked up back. Names are interned where ids are the
+ * output, by {@link TokenStream}.
+ *
+ * @see GrammarUtils#freeze(Prism4j.Grammar)
+ */
+class CompiledGrammar {
+
+    static final int FLAG_LOOKBEHIND = 1;
+    static final int FLAG_GREEDY = 1 << 1;
+    // see Prefilter#isRegionIndependent, never set for lookbehind patterns
+    static final int FLAG_REGION_INDEPENDENT = 1 << 2;
+
+    @NotNull
+    static CompiledGrammar create(@NotNull Prism4j.Grammar grammar) {
+        return new CompiledGrammar(grammar);
+    }
+
+    final Prism4j.Grammar grammar;
+
+    final int tokenCount;
+
+    // original token instances, they are compared by identity when re-matching after a greedy match
+    final Prism4j.Token[] tokens;
+    final String[] types;
+    final int[] tokenPatterns;
+
+    final int patternCount;
+
+    final java.util.regex.Pattern[] regex;
+    // null when a pattern cannot be prefiltered
+    final Prefilter[] prefilters;
+    // null when a pattern is not a keyword pattern
+    final KeywordMatcher[] keywords;
+    final int[] flags;
+    final String[] aliases;
+    final Prism4j.Grammar[] insides;
+
+    // filled only for frozen grammars
+    final CompiledGrammar[] compiledInsides;
+
+    private CompiledGrammar(@NotNull Prism4j.Grammar grammar) {
+
+        this.grammar = grammar;
+
+        final List<Prism4j.Token> tokens = grammar.tokens();
+
+        int patternCount = 0;
+        for (Prism4j.Token token : tokens) {
+            patternCount += token.patterns().size();
+        }
+
+        this.tokenCount = tokens.size();
+        this.tokens = new Prism4j.Token[tokenCount];
+        this.types = new String[tokenCount];
+        this.tokenPatterns = new int[tokenCount + 1];
+
+        this.patternCount = patternCount;
+        this.regex = new java.util.regex.Pattern[patternCount];
+        this.prefilters = new Prefilter[patternCount];
+        this.keywords = new KeywordMatcher[patternCount];
+        this.flags = new int[patternCount];
+        this.aliases = new String[patternCount];
+        this.insides = new Prism4j.Grammar[patternCount];
+        this.compiledInsides = new CompiledGrammar[patternCount];
+
+        int t = 0;
+        int p = 0;
+
+        for (Prism4j.Token token : tokens) {
+
+            this.tokens[t] = token;
+            this.types[t] = token.name();
+            this.tokenPatterns[t] = p;
+
+            for (Prism4j.Pattern pattern : token.patterns()) {
+
+                this.regex[p] = pattern.regex();
+                this.prefilters[p] = Prefilter.of(pattern);
+                this.keywords[p] = KeywordMatcher.of(pattern);
+                this.flags[p] = (pattern.lookbehind() ? FLAG_LOOKBEHIND : 0)
+                        | (pattern.greedy() ? FLAG_GREEDY : 0)
+                        | (!pattern.lookbehind() && Prefilter.isRegionIndependent(pattern) ? FLAG_REGION_INDEPENDENT : 0);
+                this.aliases[p] = pattern.alias();
+                this.insides[p] = pattern.inside();
+
+                p += 1;
+            }
+
+            t += 1;
+        }
+
+        this.tokenPatterns[t] = p;
+    }
+
+    boolean lookbehind(int pattern) {
+        return (flags[pattern] & FLAG_LOOKBEHIND) != 0;
+    }
+
+    boolean greedy(int pattern) {
+        return (flags[pattern] & FLAG_GREEDY) != 0;
+    }
+
+    boolean regionIndependent(int pattern) {
+        return (flags[pattern] & FLAG_REGION_INDEPENDENT) != 0;
+    }
+
+    @Nullable
+    Prism4j.Grammar inside(int pattern) {
+        return insides[pattern];
+    }
+}
@@ -0,0 +1,117 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Emits JFR events ({@link TokenizeEvent} and {@link GrammarEvent}). Event classes are loaded
+ * only when Flight Recorder is available (it is not on some runtimes, for example, on Android),
+ * so the rest of the library never references them directly. When an event is not enabled
+ * by a recording, begin methods return null without creating the event.
+ */
+abstract class Events {
+
+    static final boolean AVAILABLE = isAvailable();
+
+    /**
+     * @return started event (to be passed to {@link #commitTokenize(Object, Prism4j.Grammar, int, int)})
+     * or null if tokenize events are not recorded
+     */
+    @Nullable
+    static Object beginTokenize() {
+        if (!AVAILABLE || !Types.TOKENIZE.isEnabled()) {
+            return null;
+        }
+        final TokenizeEvent event = new TokenizeEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitTokenize(
+            @NotNull Object started,
+            @NotNull Prism4j.Grammar grammar,
+            int inputLength,
+            int nodeCount) {
+        final TokenizeEvent event = (TokenizeEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.language = grammar.name();
+            event.inputLength = inputLength;
+            event.nodeCount = nodeCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return started event (to be passed to {@link #commitGrammar(Object, String, boolean, boolean)})
+     * or null if grammar events are not recorded
+     */
+    @Nullable
+    static Object beginGrammar() {
+        if (!AVAILABLE || !Types.GRAMMAR.isEnabled()) {
+            return null;
+        }
+        final GrammarEvent event = new GrammarEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitGrammar(
+            @NotNull Object started,
+            @NotNull String language,
+            boolean found,
+            boolean created) {
+        final GrammarEvent event = (GrammarEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.language = language;
+            event.found = found;
+            event.created = created;
+            event.commit();
+        }
+    }
+
+    static int nodeCount(@NotNull List<? extends Prism4j.Node> nodes) {
+        final ArrayDeque<List<? extends Prism4j.Node>> stack = new ArrayDeque<>();
+        stack.push(nodes);
+        return nodeCount(stack);
+    }
+
+    // counts nodes of lists in the stack (without recursion, nesting can be deep)
+    private static int nodeCount(@NotNull ArrayDeque<List<? extends Prism4j.Node>> stack) {
+        int count = 0;
+        while (!stack.isEmpty()) {
+            final List<? extends Prism4j.Node> nodes = stack.pop();
+            count += nodes.size();
+            for (Prism4j.Node node : nodes) {
+                if (node.isSyntax()) {
+                    stack.push(((Prism4j.Syntax) node).children());
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean isAvailable() {
+        try {
+            return FlightRecorder.isAvailable();
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    // event types are registered on first use, only if Flight Recorder is available
+    private static class Types {
+        static final EventType TOKENIZE = EventType.getEventType(TokenizeEvent.class);
+        static final EventType GRAMMAR = EventType.getEventType(GrammarEvent.class);
+    }
+
+    private Events() {
+    }
+}
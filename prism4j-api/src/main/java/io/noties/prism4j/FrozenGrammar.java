@@ -0,0 +1,178 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable copy of a grammar graph (including all `inside` grammars) that holds its
+ * precompiled {@link CompiledGrammar}, so tokenizer does not have to inspect grammar
+ * on each call.
+ * <p>
+ * Lists returned by {@link #tokens()} and {@link Prism4j.Token#patterns()} cannot be modified.
+ * Changes to the original grammar are not reflected. Once frozen grammar is published it
+ * can be used by multiple threads (its compiled form is published with a volatile write after
+ * the whole graph is compiled, so it is never observed partially linked).
+ *
+ * @see GrammarUtils#freeze(Prism4j.Grammar)
+ */
+class FrozenGrammar implements Prism4j.Grammar {
+
+    @NotNull
+    static Prism4j.Grammar freeze(@NotNull Prism4j.Grammar grammar) {
+        if (grammar instanceof FrozenGrammar) {
+            return grammar;
+        }
+        return new Freezer().freeze(grammar);
+    }
+
+    private final String name;
+    private final List<Prism4j.Token> tokens;
+
+    // if this instance was returned by a GrammarLocator (see Prism4j#grammar)
+    volatile boolean located;
+
+    // assigned by Freezer when compiled grammars of the whole graph are created and linked, so
+    // a thread that reads it sees them complete. It is null only if this grammar was published
+    // without a happens-before edge and the assignment is not visible yet (see #compiled())
+    private volatile CompiledGrammar compiled;
+
+    private FrozenGrammar(@NotNull String name, @NotNull List<Prism4j.Token> tokens) {
+        this.name = name;
+        this.tokens = tokens;
+    }
+
+    @NotNull
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @NotNull
+    @Override
+    public List<Prism4j.Token> tokens() {
+        return tokens;
+    }
+
+    /**
+     * @return compiled form of this grammar, created when this grammar was frozen (or a new one
+     * if it is not visible to the calling thread, see {@link #compiled})
+     */
+    @NotNull
+    CompiledGrammar compiled() {
+        final CompiledGrammar compiled = this.compiled;
+        return compiled != null
+                ? compiled
+                : CompiledGrammar.create(this);
+    }
+
+    @Override
+    public String toString() {
+        return ToString.toString(this);
+    }
+
+    private static class Freezer {
+
+        // all of these are identity based, so shared tokens and patterns stay shared
+        private final Map<Prism4j.Grammar, FrozenGrammar> grammars = new IdentityHashMap<>();
+        private final Map<Prism4j.Token, Prism4j.Token> tokens = new IdentityHashMap<>();
+        private final Map<Prism4j.Pattern, Prism4j.Pattern> patterns = new IdentityHashMap<>();
+
+        @NotNull
+        FrozenGrammar freeze(@NotNull Prism4j.Grammar grammar) {
+
+            final FrozenGrammar frozen = copy(grammar);
+
+            // compile after the whole graph is copied (grammars can reference each other)
+            final Map<Prism4j.Grammar, CompiledGrammar> compiled = new IdentityHashMap<>(grammars.size());
+            for (FrozenGrammar g : grammars.values()) {
+                compiled.put(g, CompiledGrammar.create(g));
+            }
+
+            // resolve inside grammars by identity
+            for (CompiledGrammar c : compiled.values()) {
+                for (int i = 0; i < c.patternCount; i++) {
+                    final Prism4j.Grammar inside = c.insides[i];
+                    if (inside != null) {
+                        c.compiledInsides[i] = compiled.get(inside);
+                    }
+                }
+            }
+
+            // published only when all of them are complete (volatile writes)
+            for (FrozenGrammar g : grammars.values()) {
+                g.compiled = compiled.get(g);
+            }
+
+            return frozen;
+        }
+
+        @NotNull
+        private FrozenGrammar copy(@NotNull Prism4j.Grammar grammar) {
+
+            FrozenGrammar frozen = grammars.get(grammar);
+            if (frozen != null) {
+                return frozen;
+            }
+
+            final List<Prism4j.Token> origins = grammar.tokens();
+            final List<Prism4j.Token> out = new ArrayList<>(origins.size());
+
+            frozen = new FrozenGrammar(grammar.name(), Collections.unmodifiableList(out));
+            grammars.put(grammar, frozen);
+
+            for (Prism4j.Token token : origins) {
+                out.add(copy(token));
+            }
+
+            return frozen;
+        }
+
+        @NotNull
+        private Prism4j.Token copy(@NotNull Prism4j.Token token) {
+
+            Prism4j.Token frozen = tokens.get(token);
+            if (frozen != null) {
+                return frozen;
+            }
+
+            final List<Prism4j.Pattern> origins = token.patterns();
+            final List<Prism4j.Pattern> out = new ArrayList<>(origins.size());
+
+            frozen = new TokenImpl(token.name(), Collections.unmodifiableList(out));
+            tokens.put(token, frozen);
+
+            for (Prism4j.Pattern pattern : origins) {
+                out.add(copy(pattern));
+            }
+
+            return frozen;
+        }
+
+        @NotNull
+        private Prism4j.Pattern copy(@NotNull Prism4j.Pattern pattern) {
+
+            Prism4j.Pattern frozen = patterns.get(pattern);
+            if (frozen != null) {
+                return frozen;
+            }
+
+            final Prism4j.Grammar inside = pattern.inside();
+
+            frozen = new PatternImpl(
+                    pattern.regex(),
+                    pattern.lookbehind(),
+                    pattern.greedy(),
+                    pattern.alias(),
+                    inside != null ? copy(inside) : null
+            );
+            patterns.put(pattern, frozen);
+
+            return frozen;
+        }
+    }
+}
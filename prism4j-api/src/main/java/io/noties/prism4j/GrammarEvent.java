@@ -0,0 +1,30 @@
+package io.noties.prism4j;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of a grammar lookup. Must be referenced only by {@link Events}
+ */
+@Name(GrammarEvent.NAME)
+@Label("Grammar Lookup")
+@Category("Prism4j")
+@Description("Grammar requested from a GrammarLocator by Prism4j")
+class GrammarEvent extends Event {
+
+    static final String NAME = "io.noties.prism4j.Grammar";
+
+    @Label("Language")
+    @Description("Requested language (can be an alias)")
+    String language;
+
+    @Label("Found")
+    boolean found;
+
+    @Label("Created")
+    @Description("Grammar is created by the locator during this lookup (false for a cached grammar)")
+    boolean created;
+}
@@ -9,6 +9,9 @@ public class GrammarImpl implements Prism4j.Grammar {
     private final String name;
     private final List<Prism4j.Token> tokens;
 
+    // if this instance was returned by a GrammarLocator (see Prism4j#grammar)
+    volatile boolean located;
+
     public GrammarImpl(@NotNull String name, @NotNull List<Prism4j.Token> tokens) {
         this.name = name;
         this.tokens = tokens;
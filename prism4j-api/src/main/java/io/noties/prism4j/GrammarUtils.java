@@ -166,6 +166,25 @@ public abstract class GrammarUtils {
         return CLONER.clone(pattern);
     }
 
+    /**
+     * Creates an immutable copy of supplied grammar (including all its `inside` grammars) that is
+     * compiled once, so {@link Prism4j#tokenize(String, Prism4j.Grammar)} does not need to inspect
+     * grammar on each call. Returned grammar is safe to be shared between threads.
+     * <p>
+     * Please note that returned grammar won\'t reflect modifications of the original one (for example
+     * when another language that modifies it is requested from {@link GrammarLocator} later), so
+     * grammar should be frozen after all required languages are obtained.
+     * Lists of tokens and patterns of a frozen grammar cannot be modified, use {@link #clone(Prism4j.Grammar)}
+     * to obtain a mutable copy.
+     *
+     * @param grammar to freeze
+     * @return frozen grammar (or supplied grammar if it is already frozen)
+     */
+    @NotNull
+    public static Prism4j.Grammar freeze(@NotNull Prism4j.Grammar grammar) {
+        return FrozenGrammar.freeze(grammar);
+    }
+
     @NotNull
     public static Prism4j.Grammar extend(
             @NotNull Prism4j.Grammar grammar,
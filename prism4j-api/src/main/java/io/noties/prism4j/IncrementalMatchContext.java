@@ -0,0 +1,185 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * {@link MatchContext} that records every search into a {@link SearchLog} and answers searches
+ * from the log of the previous tokenization (of the text before an edit) when the result
+ * cannot be affected by the edit:
+ * <ul>
+ * <li>region is not changed (entirely before or entirely after the edit)</li>
+ * <li>a match was found and everything that matcher has read (and matched) ends before the edit
+ * and before the region end (so the matcher has not observed the region end either)</li>
+ * </ul>
+ * A search result depends only on the searched region (matchers use opaque and anchoring bounds,
+ * so nothing outside the region is observed), thus the tokenization is exactly the same as if
+ * every search was performed.
+ */
+class IncrementalMatchContext extends MatchContext {
+
+    private static final int MIN_LOGGED_REGION = 16;
+
+    private final ReadTracker tracker;
+
+    private final SearchLog previous;
+    private final SearchLog log;
+
+    // edit in the new text coordinates, positions starting at `editEnd` are shifted by `delta`
+    private final int editStart;
+    private final int editEnd;
+    private final int delta;
+
+    IncrementalMatchContext(@NotNull CharSequence text) {
+        this(new ReadTracker(text), null, new SearchLog(), 0, 0, 0);
+    }
+
+    // text is the same as of the previous log
+    IncrementalMatchContext(@NotNull CharSequence text, @NotNull SearchLog previous) {
+        this(text, previous, text.length(), 0, 0);
+    }
+
+    IncrementalMatchContext(
+            @NotNull CharSequence text,
+            @NotNull SearchLog previous,
+            int editStart,
+            int removedLength,
+            int insertedLength) {
+        this(
+                new ReadTracker(text),
+                previous,
+                new SearchLog(previous),
+                editStart,
+                editStart + insertedLength,
+                insertedLength - removedLength);
+    }
+
+    private IncrementalMatchContext(
+            @NotNull ReadTracker tracker,
+            @Nullable SearchLog previous,
+            @NotNull SearchLog log,
+            int editStart,
+            int editEnd,
+            int delta) {
+        super(tracker.text, tracker);
+        this.tracker = tracker;
+        this.previous = previous;
+        this.log = log;
+        this.editStart = editStart;
+        this.editEnd = editEnd;
+        this.delta = delta;
+    }
+
+    @NotNull
+    SearchLog log() {
+        return log;
+    }
+
+    @Override
+    boolean search(@NotNull CompiledGrammar grammar, int pattern, int start, int end) {
+
+        // searching a short region is cheaper than keeping and looking up its record
+        if (end - start < MIN_LOGGED_REGION) {
+            return super.search(grammar, pattern, start, end);
+        }
+
+        // prefilter reads text directly, a rejected search is not recorded (it is as cheap to repeat)
+        if (!mayMatch(grammar, pattern, start, end)) {
+            return false;
+        }
+
+        final int grammarId = log.grammarId(grammar.grammar);
+        final long key = SearchLog.key(grammarId, pattern, start);
+
+        if (previous != null
+                && (start < editStart || start >= editEnd)
+                && reuse(SearchLog.key(grammarId, pattern, start < editStart ? start : start - delta), key, start, end)) {
+            return matchStart != SearchLog.NOT_FOUND;
+        }
+
+        tracker.maxRead = -1;
+
+        if (!find(grammar, pattern, start, end)) {
+            log.add(key, end, SearchLog.NOT_FOUND, SearchLog.NOT_FOUND, end);
+            return false;
+        }
+
+        log.add(key, end, matchStart, matchEnd, Math.max(matchEnd, tracker.maxRead + 1));
+
+        return true;
+    }
+
+    private boolean reuse(long previousKey, long key, int start, int end) {
+
+        final int index = previous.find(previousKey);
+        if (index == -1) {
+            return false;
+        }
+
+        final boolean after = start >= editEnd;
+        final int shift = after ? delta : 0;
+        final int previousEnd = previous.end(index) + shift;
+        final int depend = previous.depend(index) + shift;
+        final boolean found = previous.matchStart(index) != SearchLog.NOT_FOUND;
+
+        final boolean sameRegion = previousEnd == end
+                && (after || end <= editStart);
+
+        final boolean sameMatch = found
+                && depend < previousEnd
+                && depend < end
+                && (after || depend <= editStart);
+
+        if (!sameRegion && !sameMatch) {
+            return false;
+        }
+
+        if (found) {
+            matchStart = previous.matchStart(index) + shift;
+            matchEnd = previous.matchEnd(index) + shift;
+            log.add(key, end, matchStart, matchEnd, depend);
+        } else {
+            matchStart = SearchLog.NOT_FOUND;
+            log.add(key, end, SearchLog.NOT_FOUND, SearchLog.NOT_FOUND, depend);
+        }
+
+        return true;
+    }
+
+    // records the greatest index that was read by a matcher
+    private static class ReadTracker implements CharSequence {
+
+        final CharSequence text;
+
+        int maxRead;
+
+        ReadTracker(@NotNull CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index > maxRead) {
+                maxRead = index;
+            }
+            return text.charAt(index);
+        }
+
+        @NotNull
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
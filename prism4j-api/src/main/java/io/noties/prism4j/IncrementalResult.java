@@ -0,0 +1,64 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Result of {@link Prism4j#tokenizeIncremental(String, Prism4j.Grammar)} that can be updated
+ * after an edit of the text with {@link Prism4j#retokenize(IncrementalResult, int, int, String)}.
+ * In addition to the nodes it holds results of all pattern searches that were performed
+ * (so an update does not repeat searches that cannot be affected by the edit). Nodes are not
+ * shared between results, an update creates all of them again.
+ * <p>
+ * Grammar must not be modified between updates (consider using a frozen grammar,
+ * see {@link GrammarUtils#freeze(Prism4j.Grammar)}).
+ */
+public class IncrementalResult {
+
+    private final String text;
+    private final Prism4j.Grammar grammar;
+    private final List<Prism4j.Node> nodes;
+
+    final SearchLog log;
+
+    IncrementalResult(
+            @NotNull String text,
+            @NotNull Prism4j.Grammar grammar,
+            @NotNull List<Prism4j.Node> nodes,
+            @NotNull SearchLog log) {
+        this.text = text;
+        this.grammar = grammar;
+        this.nodes = nodes;
+        this.log = log;
+    }
+
+    @NotNull
+    public String text() {
+        return text;
+    }
+
+    @NotNull
+    public Prism4j.Grammar grammar() {
+        return grammar;
+    }
+
+    /**
+     * @return nodes that are equal to what {@link Prism4j#tokenize(String, Prism4j.Grammar)} returns
+     * for the {@link #text()}
+     */
+    @NotNull
+    public List<Prism4j.Node> nodes() {
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return "IncrementalResult{" +
+                "text.length=" + text.length() +
+                ", grammar=" + grammar.name() +
+                ", nodes.size=" + nodes.size() +
+                ", searches=" + log.size() +
+                '}';
+    }
+}
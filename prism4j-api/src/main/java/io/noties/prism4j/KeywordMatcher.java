@@ -0,0 +1,519 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Matches keyword patterns without regex. A keyword pattern is an alternation of plain words
+ * (optional groups are expanded, for example {@code go(?:to)?}) surrounded by word bounds:
+ * <ul>
+ * <li>{@code \b(?:if|else|while)\b}</li>
+ * <li>{@code (^|[^.])\b(?:if|else|while)\b} with lookbehind</li>
+ * <li>{@code \b(?:avg|count|sum)(?=\s*\()}</li>
+ * </ul>
+ * As every word consists of word chars (and spaces between them, for example {@code FOR EACH ROW})
+ * and must be followed by a non-word char (or region end), only words that end where a run of
+ * word chars ends can match at a position. So each run of the region is looked up once in
+ * a hash table (or a few times, if words contain spaces). When multiple words match at the
+ * same position the first one (in order of alternatives) is used, the same as regex does.
+ * <p>
+ * Depending on java version {@code \b} treats non-ASCII letters as word chars or not, so when
+ * a found word is next to a non-ASCII char the search is performed by the regex instead
+ * (see {@link #FALLBACK}).
+ *
+ * @see MatchContext#find(CompiledGrammar, int, int, int)
+ */
+class KeywordMatcher {
+
+    static final long NOT_FOUND = -1L;
+
+    // result cannot be determined without the regex
+    static final long FALLBACK = -2L;
+
+    // max number of words after expanding optional groups
+    private static final int MAX_WORDS = 4096;
+
+    // cached result for a regex that is not a keyword pattern
+    private static final KeywordMatcher NONE = new KeywordMatcher(Collections.emptyList(), false, false, 0L, 0L, (char) 0);
+
+    /**
+     * @param pattern with lookbehind flag set only if it starts with a group (otherwise
+     *                keyword matcher is not used)
+     * @return matcher for the regex of the pattern or null if regex is not a keyword pattern
+     */
+    @Nullable
+    static KeywordMatcher of(@NotNull Prism4j.Pattern pattern) {
+        final KeywordMatcher matcher = cached(pattern);
+        return matcher != NONE && matcher.lookbehind == pattern.lookbehind()
+                ? matcher
+                : null;
+    }
+
+    static int start(long result) {
+        return (int) (result >>> 32);
+    }
+
+    static int end(long result) {
+        return (int) result;
+    }
+
+    // stored in a pattern, see Prefilter#cached
+    @NotNull
+    private static KeywordMatcher cached(@NotNull Prism4j.Pattern pattern) {
+        if (!(pattern instanceof PatternImpl)) {
+            return analyze(pattern.regex());
+        }
+        final PatternImpl impl = (PatternImpl) pattern;
+        KeywordMatcher matcher = impl.keywords;
+        if (matcher == null) {
+            matcher = analyze(pattern.regex());
+            impl.keywords = matcher;
+        }
+        return matcher;
+    }
+
+    @NotNull
+    private static KeywordMatcher analyze(@NotNull java.util.regex.Pattern regex) {
+
+        final int flags = regex.flags();
+
+        // only ASCII case folding is supported (with unicode case KELVIN SIGN matches `k`)
+        if ((flags & ~(java.util.regex.Pattern.CASE_INSENSITIVE | java.util.regex.Pattern.MULTILINE)) != 0) {
+            return NONE;
+        }
+
+        try {
+            return new Parser(
+                    regex.pattern(),
+                    (flags & java.util.regex.Pattern.CASE_INSENSITIVE) != 0,
+                    (flags & java.util.regex.Pattern.MULTILINE) != 0
+            ).parse();
+        } catch (UnsupportedException e) {
+            return NONE;
+        }
+    }
+
+    private final boolean caseInsensitive;
+
+    // if pattern starts with `(^|[^...])`, chars in the class cannot precede a keyword
+    private final boolean lookbehind;
+    private final long excludedLow;
+    private final long excludedHigh;
+
+    // if not 0 keyword must be followed by optional whitespace and this char (`(?=\s*\()`),
+    // otherwise by a word bound
+    private final char lookahead;
+
+    // open addressing table of words (lower case if case insensitive) and their indices
+    // in order of alternatives
+    private final char[][] table;
+    private final int[] orders;
+    private final int minLength;
+    private final int maxLength;
+
+    private KeywordMatcher(
+            @NotNull List<String> words,
+            boolean caseInsensitive,
+            boolean lookbehind,
+            long excludedLow,
+            long excludedHigh,
+            char lookahead) {
+
+        this.caseInsensitive = caseInsensitive;
+        this.lookbehind = lookbehind;
+        this.excludedLow = excludedLow;
+        this.excludedHigh = excludedHigh;
+        this.lookahead = lookahead;
+        this.table = new char[Integer.highestOneBit(Math.max(words.size(), 1)) << 2][];
+        this.orders = new int[table.length];
+
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+
+        final int mask = table.length - 1;
+
+        for (int order = 0, size = words.size(); order < size; order++) {
+            final String word = words.get(order);
+            final char[] chars = (caseInsensitive ? lowerCase(word) : word).toCharArray();
+            int i = hash(chars, 0, chars.length) & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = chars;
+            orders[i] = order;
+            minLength = Math.min(minLength, chars.length);
+            maxLength = Math.max(maxLength, chars.length);
+        }
+
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Finds the first keyword in the region (as regex search would)
+     *
+     * @return start and end of keyword (see {@link #start(long)} and {@link #end(long)}),
+     * {@link #NOT_FOUND} or {@link #FALLBACK}
+     */
+    long find(@NotNull CharSequence text, int start, int end) {
+
+        int i = start;
+
+        while (i < end) {
+
+            if (!isWord(text.charAt(i))) {
+                i += 1;
+                continue;
+            }
+
+            // a run of word chars, the char before it (if any) is not an ASCII word char
+            int j = i + 1;
+            while (j < end && isWord(text.charAt(j))) {
+                j += 1;
+            }
+
+            final long result = match(text, start, end, i, j);
+            if (result != NOT_FOUND) {
+                return result;
+            }
+
+            i = j;
+        }
+
+        return NOT_FOUND;
+    }
+
+    private long match(@NotNull CharSequence text, int start, int end, int i, int j) {
+
+        int order = Integer.MAX_VALUE;
+        int matchEnd = -1;
+        boolean uncertain = false;
+
+        // every end of a run of word chars (runs can be separated by spaces) is a candidate
+        for (int k = j; k <= end && k - i <= maxLength; ) {
+
+            final int candidate = order(text, i, k);
+            if (candidate != -1 && candidate < order) {
+                if (lookahead == 0) {
+                    if (k < end && text.charAt(k) >= 128) {
+                        uncertain = true;
+                    } else {
+                        order = candidate;
+                        matchEnd = k;
+                    }
+                } else if (followedByLookahead(text, k, end)) {
+                    order = candidate;
+                    matchEnd = k;
+                }
+            }
+
+            if (k + 1 >= end || text.charAt(k) != ' ' || !isWord(text.charAt(k + 1))) {
+                break;
+            }
+
+            k += 2;
+            while (k < end && isWord(text.charAt(k))) {
+                k += 1;
+            }
+        }
+
+        if (matchEnd == -1 && !uncertain) {
+            return NOT_FOUND;
+        }
+
+        if (i > start) {
+            final char before = text.charAt(i - 1);
+            if (before >= 128) {
+                return FALLBACK;
+            }
+            if (lookbehind && isExcluded(before)) {
+                return NOT_FOUND;
+            }
+        }
+
+        if (uncertain) {
+            return FALLBACK;
+        }
+
+        return ((long) i << 32) | matchEnd;
+    }
+
+    // `\s` is ASCII only
+    private boolean followedByLookahead(@NotNull CharSequence text, int index, int end) {
+        for (int k = index; k < end; k++) {
+            final char c = text.charAt(k);
+            if (c == lookahead) {
+                return true;
+            }
+            if (c != ' ' && (c < '\t' || c > '\r')) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExcluded(char c) {
+        return c < 64
+                ? (excludedLow & (1L << c)) != 0
+                : (excludedHigh & (1L << c)) != 0;
+    }
+
+    // order of the word or -1
+    private int order(@NotNull CharSequence text, int start, int end) {
+
+        final int length = end - start;
+        if (length < minLength || length > maxLength) {
+            return -1;
+        }
+
+        final int mask = table.length - 1;
+        for (int i = hash(text, start, end) & mask; ; i = (i + 1) & mask) {
+            final char[] word = table[i];
+            if (word == null) {
+                return -1;
+            }
+            if (word.length == length && equals(word, text, start)) {
+                return orders[i];
+            }
+        }
+    }
+
+    private boolean equals(@NotNull char[] word, @NotNull CharSequence text, int start) {
+        for (int i = 0, length = word.length; i < length; i++) {
+            final char c = text.charAt(start + i);
+            if (word[i] != (caseInsensitive ? lowerCase(c) : c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(@NotNull CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            h = 31 * h + (caseInsensitive ? lowerCase(c) : c);
+        }
+        return mix(h);
+    }
+
+    // words are already in lower case
+    private static int hash(@NotNull char[] chars, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    // `[a-zA-Z0-9_]`
+    private static boolean isWord(char c) {
+        return (c >= 'a' && c <= 'z')
+                || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9')
+                || c == '_';
+    }
+
+    private static char lowerCase(char c) {
+        return c >= 'A' && c <= 'Z'
+                ? (char) (c + ('a' - 'A'))
+                : c;
+    }
+
+    @NotNull
+    private static String lowerCase(@NotNull String word) {
+        final char[] chars = word.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = lowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static class Parser {
+
+        private final String source;
+        private final int length;
+        private final boolean caseInsensitive;
+        private final boolean multiline;
+
+        private int index;
+
+        Parser(@NotNull String source, boolean caseInsensitive, boolean multiline) {
+            this.source = source;
+            this.length = source.length();
+            this.caseInsensitive = caseInsensitive;
+            this.multiline = multiline;
+        }
+
+        @NotNull
+        KeywordMatcher parse() {
+
+            boolean lookbehind = false;
+            long excludedLow = 0L;
+            long excludedHigh = 0L;
+
+            // `^` can match after a line terminator in multiline mode
+            if (!multiline && source.startsWith("(^|[^")) {
+                index = 5;
+                char c;
+                while ((c = next()) != ']') {
+                    if (c == '\\') {
+                        c = next();
+                        if (isWord(c)) {
+                            throw new UnsupportedException();
+                        }
+                    }
+                    if (c >= 128 || c == '-' || c == '[' || c == '&' || c == '^') {
+                        throw new UnsupportedException();
+                    }
+                    if (c < 64) {
+                        excludedLow |= 1L << c;
+                    } else {
+                        excludedHigh |= 1L << c;
+                    }
+                }
+                expect(")");
+                lookbehind = true;
+            }
+
+            expect("\\b(?:");
+
+            final Set<String> words = alternation();
+
+            expect(")");
+
+            char lookahead = 0;
+
+            if (source.startsWith("\\b", index)) {
+                index += 2;
+            } else if (source.startsWith("(?=\\s*", index)) {
+                index += 6;
+                lookahead = next();
+                if (lookahead == '\\') {
+                    lookahead = next();
+                }
+                if (isWord(lookahead) || lookahead >= 128 || Character.isWhitespace(lookahead)) {
+                    throw new UnsupportedException();
+                }
+                expect(")");
+            } else {
+                throw new UnsupportedException();
+            }
+
+            if (index != length) {
+                throw new UnsupportedException();
+            }
+
+            // spaces only between word chars
+            for (String word : words) {
+                if (word.isEmpty()
+                        || !isWord(word.charAt(0))
+                        || !isWord(word.charAt(word.length() - 1))
+                        || word.contains("  ")) {
+                    throw new UnsupportedException();
+                }
+            }
+
+            return new KeywordMatcher(
+                    new ArrayList<>(words),
+                    caseInsensitive,
+                    lookbehind,
+                    excludedLow,
+                    excludedHigh,
+                    lookahead);
+        }
+
+        @NotNull
+        private Set<String> alternation() {
+            final Set<String> words = sequence();
+            while (index < length && source.charAt(index) == '|') {
+                index += 1;
+                words.addAll(sequence());
+                check(words);
+            }
+            return words;
+        }
+
+        @NotNull
+        private Set<String> sequence() {
+
+            Set<String> words = new LinkedHashSet<>();
+            words.add("");
+
+            while (index < length) {
+
+                final char c = source.charAt(index);
+
+                final Set<String> item;
+                if (c == '|' || c == ')') {
+                    break;
+                } else if (source.startsWith("(?:", index)) {
+                    index += 3;
+                    item = alternation();
+                    expect(")");
+                } else if (isWord(c) || c == ' ') {
+                    index += 1;
+                    item = new LinkedHashSet<>();
+                    item.add(String.valueOf(c));
+                } else {
+                    throw new UnsupportedException();
+                }
+
+                if (index < length && source.charAt(index) == '?') {
+                    index += 1;
+                    item.add("");
+                }
+
+                final Set<String> product = new LinkedHashSet<>();
+                for (String prefix : words) {
+                    for (String suffix : item) {
+                        product.add(prefix + suffix);
+                    }
+                }
+                check(product);
+                words = product;
+            }
+
+            return words;
+        }
+
+        private static void check(@NotNull Set<String> words) {
+            if (words.size() > MAX_WORDS) {
+                throw new UnsupportedException();
+            }
+        }
+
+        private void expect(@NotNull String s) {
+            if (!source.startsWith(s, index)) {
+                throw new UnsupportedException();
+            }
+            index += s.length();
+        }
+
+        private char next() {
+            if (index >= length) {
+                throw new UnsupportedException();
+            }
+            return source.charAt(index++);
+        }
+    }
+
+    private static class UnsupportedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedException() {
+            super(null, null, false, false);
+        }
+    }
+}
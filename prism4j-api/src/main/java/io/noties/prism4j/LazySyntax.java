@@ -0,0 +1,79 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Syntax node whose content is tokenized with an inside grammar on the first access
+ * of {@link #children()} (see {@link Prism4j#tokenizeLazy(String, Prism4j.Grammar)}). Until then
+ * it holds only the compiled inside grammar, children are computed once even if accessed
+ * by multiple threads. Nested inside grammars of children are lazy too.
+ */
+class LazySyntax extends SyntaxImpl {
+
+    // released when children are computed
+    private Prism4j prism4j;
+    private CompiledGrammar inside;
+    private final int depth;
+
+    private volatile List<? extends Prism4j.Node> children;
+
+    LazySyntax(
+            @NotNull Prism4j prism4j,
+            @NotNull String type,
+            @Nullable String alias,
+            @NotNull CharSequence source,
+            int start,
+            int end,
+            boolean greedy,
+            @NotNull CompiledGrammar inside,
+            int depth) {
+        super(type, Collections.emptyList(), alias, source, start, end, greedy, true);
+        this.prism4j = prism4j;
+        this.inside = inside;
+        this.depth = depth;
+    }
+
+    @NotNull
+    @Override
+    public List<? extends Prism4j.Node> children() {
+        List<? extends Prism4j.Node> children = this.children;
+        if (children == null) {
+            synchronized (this) {
+                children = this.children;
+                if (children == null) {
+                    children = prism4j.tokenizeLazy(source(), start(), end(), inside, depth);
+                    this.children = children;
+                    prism4j = null;
+                    inside = null;
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @return if children were tokenized already
+     */
+    boolean isTokenized() {
+        return children != null;
+    }
+
+    /**
+     * @return grammar of the content or null if children were tokenized already
+     */
+    @Nullable
+    CompiledGrammar inside() {
+        return inside;
+    }
+
+    /**
+     * @return number of inside grammars applied to the content
+     */
+    int depth() {
+        return depth;
+    }
+}
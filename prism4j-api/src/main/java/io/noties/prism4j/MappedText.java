@@ -0,0 +1,258 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Text of a memory-mapped file that is decoded on access, so a large file can be tokenized
+ * without reading it onto the heap. Nodes reference the text by offsets (literals are created
+ * only when accessed). Please note that nodes are still created for the whole text: even
+ * {@link Prism4j#tokenize(CharSequence, Prism4j.Grammar, TokenSink)} keeps all top-level nodes
+ * until the text is tokenized, so heap usage grows with the number of top-level tokens
+ * (an SQL dump or a log consists almost entirely of them). To highlight a huge file with a bounded
+ * heap use {@link Prism4j#tokenize(java.io.Reader, Prism4j.Grammar, TokenSink)} with a reader
+ * of the file (for example, {@link java.nio.file.Files#newBufferedReader(Path, Charset)}).
+ * <p>
+ * File is decoded once when mapped to find its length and where each block of chars starts,
+ * then blocks are decoded again when they are read (a few recently read blocks are kept).
+ * Charset must be stateless (for example, UTF-8 or ISO-8859-1, but not UTF-16 with a byte order mark),
+ * malformed input is replaced as {@link String#String(byte[], Charset)} does.
+ * <p>
+ * This class is thread-safe. File must not be modified while the text is used.
+ *
+ * @see #map(Path, Charset)
+ */
+public class MappedText implements CharSequence {
+
+    /**
+     * Same as {@link #map(Path, Charset)} with UTF-8
+     */
+    @NotNull
+    public static MappedText map(@NotNull Path file) throws IOException {
+        return map(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Maps file into memory, the file can be closed right after (mapping stays valid)
+     *
+     * @throws IOException if file cannot be read or is larger than 2GB
+     */
+    @NotNull
+    public static MappedText map(@NotNull Path file, @NotNull Charset charset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be mapped, file: " + file + ", size: " + size);
+            }
+            return new MappedText(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), charset);
+        }
+    }
+
+    // chars in a block (except the last one and blocks before a surrogate pair that did not fit)
+    static final int BLOCK_LENGTH = 8 * 1024;
+
+    private static final int CACHE_SIZE = 16;
+
+    private final ByteBuffer bytes;
+    private final Charset charset;
+    private final int length;
+
+    // start of each block (and end of the last one) in bytes and in chars
+    private final int[] bytePositions;
+    private final int[] charPositions;
+
+    // decoded blocks, a block is immutable, so races only cause a block to be decoded again
+    private final Block[] cache = new Block[CACHE_SIZE];
+    private Block last;
+
+    private MappedText(@NotNull ByteBuffer bytes, @NotNull Charset charset) {
+
+        this.bytes = bytes;
+        this.charset = charset;
+
+        final CharsetDecoder decoder = decoder(charset);
+        final ByteBuffer in = bytes.duplicate();
+        final CharBuffer out = CharBuffer.allocate(BLOCK_LENGTH);
+
+        int[] bytePositions = new int[16];
+        int[] charPositions = new int[16];
+        int blocks = 0;
+        long length = 0L;
+
+        // each decode call stops at a char boundary, so a block can be decoded on its own
+        while (true) {
+            final int position = in.position();
+            out.clear();
+            CoderResult result = decoder.decode(in, out, true);
+            if (result.isUnderflow()) {
+                result = decoder.flush(out);
+            }
+            throwIfError(result);
+            if (out.position() > 0) {
+                if (blocks + 1 == bytePositions.length) {
+                    bytePositions = Arrays.copyOf(bytePositions, bytePositions.length << 1);
+                    charPositions = Arrays.copyOf(charPositions, charPositions.length << 1);
+                }
+                bytePositions[blocks] = position;
+                charPositions[blocks] = (int) length;
+                blocks += 1;
+                length += out.position();
+                if (length > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Text is too long: " + length);
+                }
+            }
+            if (!result.isOverflow()) {
+                break;
+            }
+        }
+
+        bytePositions[blocks] = in.position();
+        charPositions[blocks] = (int) length;
+
+        this.length = (int) length;
+        this.bytePositions = Arrays.copyOf(bytePositions, blocks + 1);
+        this.charPositions = Arrays.copyOf(charPositions, blocks + 1);
+    }
+
+    @NotNull
+    public Charset charset() {
+        return charset;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        final Block block = block(index);
+        return block.chars[index - block.start];
+    }
+
+    /**
+     * @return a copy of the chars (a String)
+     */
+    @NotNull
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+        }
+        final StringBuilder builder = new StringBuilder(end - start);
+        int position = start;
+        while (position < end) {
+            final Block block = block(position);
+            final int to = Math.min(end, block.end);
+            builder.append(block.chars, position - block.start, to - position);
+            position = to;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return whole text (decoded onto the heap)
+     */
+    @NotNull
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    @NotNull
+    private Block block(int index) {
+
+        final Block last = this.last;
+        if (last != null && index >= last.start && index < last.end) {
+            return last;
+        }
+
+        // blocks are at most BLOCK_LENGTH chars long, so it is the one or a few after it
+        int number = index / BLOCK_LENGTH;
+        while (charPositions[number + 1] <= index) {
+            number += 1;
+        }
+
+        final int slot = number % CACHE_SIZE;
+        Block block = cache[slot];
+        if (block == null || block.number != number) {
+            block = decode(number);
+            cache[slot] = block;
+        }
+        this.last = block;
+        return block;
+    }
+
+    @NotNull
+    private Block decode(int number) {
+
+        final int start = charPositions[number];
+        final char[] chars = new char[charPositions[number + 1] - start];
+
+        final ByteBuffer in = bytes.duplicate();
+        in.limit(bytePositions[number + 1]);
+        in.position(bytePositions[number]);
+
+        final CharBuffer out = CharBuffer.wrap(chars);
+        final CharsetDecoder decoder = decoder(charset);
+        CoderResult result = decoder.decode(in, out, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(out);
+        }
+        throwIfError(result);
+        if (out.hasRemaining()) {
+            throw new IllegalStateException("Block is decoded differently, charset must be " +
+                    "stateless and file must not be modified, charset: " + charset);
+        }
+
+        return new Block(number, start, chars);
+    }
+
+    @NotNull
+    private static CharsetDecoder decoder(@NotNull Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private static void throwIfError(@NotNull CoderResult result) {
+        if (result.isError()) {
+            try {
+                result.throwException();
+            } catch (CharacterCodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class Block {
+
+        final int number;
+        final int start;
+        final int end;
+        final char[] chars;
+
+        Block(int number, int start, @NotNull char[] chars) {
+            this.number = number;
+            this.start = start;
+            this.end = start + chars.length;
+            this.chars = chars;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * State of a single {@link Prism4j#tokenize(String, Prism4j.Grammar)} call. As all nodes
+ * (including the ones produced by `inside` grammars) reference the same text, a single
+ * {@link Matcher} per regex is enough for the whole call: it is limited with
+ * {@link Matcher#region(int, int)} (which also resets it) before each search.
+ * <p>
+ * Prism rescans every remaining text fragment for each token, so a pattern is searched in
+ * a lot of small regions, mostly moving forward. If enabled ({@link Prism4j#Prism4j(GrammarLocator, boolean)}),
+ * for region-independent patterns (see {@link Prefilter#isRegionIndependent(Prism4j.Pattern)})
+ * a single search over a larger part of the text answers all following searches in regions
+ * that start before the found match: there is no match in a region if it ends before the found
+ * one, and it is the same match if it fits into the region. A pattern that is absent in
+ * the document is proven absent after a few such scans (each one looks twice as far ahead)
+ * and is not searched again for the rest of the call.
+ * <p>
+ * Not thread-safe, must not outlive the tokenize call (it holds the text).
+ */
+class MatchContext {
+
+    // how far a scan looks ahead of a searched region, it adapts to how often scans are reused
+    // (scans that find nothing are not limited by it)
+    static final int SCAN_LENGTH = 8 * 1024;
+    static final int MIN_SCAN_LENGTH = 64;
+
+    // changed only by `reset`
+    CharSequence text;
+
+    // if region-independent patterns are scanned
+    private final boolean scanPatterns;
+
+    // what matchers read, it is `text` unless a subclass needs to observe reads
+    private CharSequence input;
+
+    private final Map<java.util.regex.Pattern, Matcher> matchers = new IdentityHashMap<>();
+    private final Map<java.util.regex.Pattern, Scan> scans = new IdentityHashMap<>();
+
+    // grammars that are not frozen are compiled once per call
+    private final Map<Prism4j.Grammar, CompiledGrammar> grammars = new IdentityHashMap<>(3);
+
+    // bounds of the last found match (`matchStart` excludes lookbehind group)
+    int matchStart;
+    int matchEnd;
+
+    MatchContext(@NotNull CharSequence text, boolean scanPatterns) {
+        this.text = text;
+        this.input = text;
+        this.scanPatterns = scanPatterns;
+    }
+
+    MatchContext(@NotNull CharSequence text, @NotNull CharSequence input) {
+        this.text = text;
+        this.input = input;
+        this.scanPatterns = false;
+    }
+
+    /**
+     * Searches for the first match of a pattern in the region of the text. If a match is found
+     * its bounds are stored in {@link #matchStart} and {@link #matchEnd}
+     *
+     * @return if match was found
+     */
+    boolean search(@NotNull CompiledGrammar grammar, int pattern, int start, int end) {
+        if (scanPatterns && grammar.regionIndependent(pattern)) {
+            return scan(grammar, pattern, start, end);
+        }
+        return mayMatch(grammar, pattern, start, end)
+                && find(grammar, pattern, start, end);
+    }
+
+    /**
+     * Searches a region-independent regex (without a lookbehind group), reusing the result
+     * of the last scan of this regex when it is valid for the region (a prefilter is applied
+     * to the whole scanned region, so it is not repeated for each search)
+     *
+     * @return if match was found
+     */
+    private boolean scan(@NotNull CompiledGrammar grammar, int pattern, int start, int end) {
+
+        final java.util.regex.Pattern regex = grammar.regex[pattern];
+
+        Scan scan = scans.get(regex);
+        if (scan == null) {
+            scan = new Scan();
+            scans.put(regex, scan);
+        }
+
+        final Matcher matcher = matcher(regex);
+
+        // a scan is valid for regions inside its region that start at or before its match
+        if (start < scan.from
+                || end > scan.to
+                || (scan.start != Scan.NOT_FOUND && start > scan.start)) {
+            // a scan that answered no other search was a waste of time. A regex that was not found
+            // by a useful scan can be absent in the whole text, so the next scan can look ahead
+            // further than usual (it is proven absent with a few scans that cover the rest of the text)
+            if (!scan.reused) {
+                scan.length = Math.max(MIN_SCAN_LENGTH, scan.length >> 1);
+            } else if (scan.start == Scan.NOT_FOUND) {
+                scan.length = (int) Math.min(Integer.MAX_VALUE, (long) scan.length << 1);
+            } else {
+                scan.length = Math.min(SCAN_LENGTH, scan.length << 1);
+            }
+            scan.reused = false;
+            final int to = (int) Math.min(text.length(), Math.max(end, (long) start + scan.length));
+            scan.from = start;
+            scan.to = to;
+            if (mayMatch(grammar, pattern, start, to)
+                    && matcher.region(start, to).find()) {
+                scan.start = matcher.start();
+                scan.end = matcher.end();
+            } else {
+                scan.start = Scan.NOT_FOUND;
+            }
+        } else {
+            scan.reused = true;
+        }
+
+        // no match starts before the scanned one (and a match cannot be empty)
+        if (scan.start == Scan.NOT_FOUND || scan.start >= end) {
+            return false;
+        }
+
+        if (scan.end <= end) {
+            matchStart = scan.start;
+            matchEnd = scan.end;
+            return true;
+        }
+
+        // scanned match does not fit into the region, but a shorter one can. Scans of a regex
+        // that matches to the end of a scanned region (for example `[\s\S]+`) read a lot
+        // of text for nothing, so the next ones look less ahead
+        scan.length = Math.max(MIN_SCAN_LENGTH, scan.length >> 2);
+
+        matcher.region(scan.start, end);
+        if (!matcher.find()) {
+            return false;
+        }
+        matchStart = matcher.start();
+        matchEnd = matcher.end();
+        return true;
+    }
+
+    /**
+     * Performs the search (either with {@link KeywordMatcher} or regex), all chars are read
+     * from {@link #input}
+     *
+     * @return if match was found
+     */
+    final boolean find(@NotNull CompiledGrammar grammar, int pattern, int start, int end) {
+
+        final KeywordMatcher keywords = grammar.keywords[pattern];
+        if (keywords != null) {
+            final long result = keywords.find(input, start, end);
+            if (result == KeywordMatcher.NOT_FOUND) {
+                return false;
+            }
+            if (result != KeywordMatcher.FALLBACK) {
+                matchStart = KeywordMatcher.start(result);
+                matchEnd = KeywordMatcher.end(result);
+                return true;
+            }
+        }
+
+        final Matcher matcher = matcher(grammar.regex[pattern]);
+        matcher.region(start, end);
+        if (!matcher.find()) {
+            return false;
+        }
+        matchStart = matcher.start() + lookbehindLength(matcher, grammar.lookbehind(pattern));
+        matchEnd = matcher.end();
+        return true;
+    }
+
+    /**
+     * @return false if region certainly contains no match of the pattern (so no search is required)
+     * @see Prefilter
+     */
+    boolean mayMatch(@NotNull CompiledGrammar grammar, int pattern, int start, int end) {
+        final Prefilter prefilter = grammar.prefilters[pattern];
+        return prefilter == null || prefilter.mayMatch(text, start, end);
+    }
+
+    @NotNull
+    Matcher matcher(@NotNull java.util.regex.Pattern regex) {
+        Matcher matcher = matchers.get(regex);
+        if (matcher == null) {
+            matcher = regex.matcher(input);
+            matchers.put(regex, matcher);
+        }
+        return matcher;
+    }
+
+    @NotNull
+    CompiledGrammar compile(@NotNull Prism4j.Grammar grammar) {
+
+        if (grammar instanceof FrozenGrammar) {
+            return ((FrozenGrammar) grammar).compiled();
+        }
+
+        CompiledGrammar compiled = grammars.get(grammar);
+        if (compiled == null) {
+            compiled = CompiledGrammar.create(grammar);
+            grammars.put(grammar, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Makes this context match another text, so a batch of texts is tokenized with compiled
+     * grammars and matchers of a single context, but nodes of each text reference that text.
+     * Results of previous scans are dropped
+     */
+    void reset(@NotNull CharSequence text) {
+        this.text = text;
+        this.input = input(text);
+        for (Matcher matcher : matchers.values()) {
+            matcher.reset(input);
+        }
+        scans.clear();
+    }
+
+    /**
+     * @return what matchers read after {@link #reset(CharSequence)}, must be overridden by
+     * a subclass that wraps the text
+     */
+    @NotNull
+    CharSequence input(@NotNull CharSequence text) {
+        return text;
+    }
+
+    /**
+     * Called when tokenization is finished (not called if it has thrown)
+     */
+    void finish() {
+    }
+
+    @NotNull
+    CompiledGrammar inside(@NotNull CompiledGrammar grammar, int pattern) {
+        final CompiledGrammar compiled = grammar.compiledInsides[pattern];
+        if (compiled != null) {
+            return compiled;
+        }
+        //noinspection ConstantConditions
+        return compile(grammar.insides[pattern]);
+    }
+
+    // result of the last scan of a regex
+    private static class Scan {
+
+        static final int NOT_FOUND = -1;
+
+        // scanned region
+        int from = Integer.MAX_VALUE;
+        int to;
+
+        // first match in the region
+        int start;
+        int end;
+
+        // how far the next scan looks ahead of a searched region
+        int length = SCAN_LENGTH;
+
+        // if the last scan answered more than one search
+        boolean reused = true;
+    }
+
+    static int lookbehindLength(@NotNull Matcher matcher, boolean lookbehind) {
+        if (!lookbehind) {
+            return 0;
+        }
+        // group can be absent (start is -1 then)
+        final int start = matcher.start(1);
+        return start != -1
+                ? matcher.end(1) - start
+                : 0;
+    }
+}
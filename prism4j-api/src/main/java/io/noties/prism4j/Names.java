@@ -0,0 +1,39 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns token types and aliases to compact ids (starting with 0 in order of appearance).
+ * Not thread-safe
+ *
+ * @see TokenStream
+ */
+class Names {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    int id(@NotNull String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    @NotNull
+    String name(int id) {
+        return names.get(id);
+    }
+
+    int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,110 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Doubly linked list of {@link Prism4j.Node}s that is used during tokenization (mirrors
+ * the `LinkedList` of prism-js). Splicing at a known entry is O(1), so replacing a text
+ * node with matched syntax does not shift the rest of the nodes.
+ */
+class NodeLinkedList {
+
+    static class Entry {
+
+        final Prism4j.Node node;
+
+        Entry prev;
+        Entry next;
+
+        Entry(@Nullable Prism4j.Node node) {
+            this.node = node;
+        }
+    }
+
+    // sentinels, their `node` is always null
+    final Entry head = new Entry(null);
+    final Entry tail = new Entry(null);
+
+    private int size;
+
+    NodeLinkedList() {
+        head.next = tail;
+        tail.prev = head;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @NotNull
+    Entry addAfter(@NotNull Entry entry, @NotNull Prism4j.Node node) {
+        final Entry next = entry.next;
+        final Entry added = new Entry(node);
+        added.prev = entry;
+        added.next = next;
+        entry.next = added;
+        next.prev = added;
+        size += 1;
+        return added;
+    }
+
+    /**
+     * Removes `count` entries starting with (and including) supplied one
+     */
+    void removeRange(@NotNull Entry entry, int count) {
+        final Entry prev = entry.prev;
+        Entry next = entry;
+        int removed = 0;
+        for (; removed < count && next != tail; removed++) {
+            next = next.next;
+        }
+        prev.next = next;
+        next.prev = prev;
+        size -= removed;
+    }
+
+    /**
+     * @return iterator that removes each entry from the list when its node is returned, so nodes
+     * that were iterated over are not retained by the list
+     */
+    @NotNull
+    Iterator<Prism4j.Node> drain() {
+        return new Iterator<Prism4j.Node>() {
+
+            @Override
+            public boolean hasNext() {
+                return head.next != tail;
+            }
+
+            @Override
+            public Prism4j.Node next() {
+                final Entry entry = head.next;
+                if (entry == tail) {
+                    throw new NoSuchElementException();
+                }
+                removeRange(entry, 1);
+                return entry.node;
+            }
+        };
+    }
+
+    @NotNull
+    List<Prism4j.Node> toList() {
+        final List<Prism4j.Node> list = new ArrayList<>(size);
+        for (Entry entry = head.next; entry != tail; entry = entry.next) {
+            list.add(entry.node);
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+}
@@ -0,0 +1,141 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Splits text into chunks, collects pattern searches of each chunk (matched independently
+ * on a {@link ForkJoinPool}, without creating content of tokens) into a {@link SearchLog}
+ * and then tokenizes the whole text with {@link IncrementalMatchContext} that takes search
+ * results from that log when they are valid for the whole text. Only searches near chunk bounds (or that depend on the text
+ * after a chunk, for example, a multi-line comment that is not closed inside a chunk)
+ * are performed again.
+ *
+ * @see Prism4j#tokenizeParallel(String, Prism4j.Grammar, ForkJoinPool)
+ */
+abstract class ParallelTokenizer {
+
+    static final int MIN_CHUNK_LENGTH = 16 * 1024;
+
+    // how far from a desired chunk bound a blank line is looked up
+    private static final int BLANK_LINE_DISTANCE = 1024;
+
+    @NotNull
+    static List<Prism4j.Node> tokenize(
+            @NotNull Prism4j prism4j,
+            @NotNull String text,
+            @NotNull Prism4j.Grammar grammar,
+            @NotNull ForkJoinPool pool) {
+
+        final int[] bounds = bounds(text, pool.getParallelism());
+        if (bounds.length < 3) {
+            return prism4j.tokenize(text, grammar);
+        }
+
+        final SearchLog log = pool.invoke(new ChunkTask(prism4j, text, grammar, bounds, 0, bounds.length - 1));
+
+        final IncrementalMatchContext context = new IncrementalMatchContext(text, log);
+        return prism4j.tokenize(context, 0, text.length(), context.compile(grammar));
+    }
+
+    /**
+     * @return bounds of chunks (the first is always `0` and the last is text length)
+     */
+    @NotNull
+    static int[] bounds(@NotNull String text, int parallelism) {
+
+        final int length = text.length();
+
+        // more chunks than threads, so a slow chunk does not keep other threads waiting
+        final int count = Math.min(parallelism * 2, length / MIN_CHUNK_LENGTH);
+        if (count < 2) {
+            return new int[]{0, length};
+        }
+
+        final int[] bounds = new int[count + 1];
+        int size = 1;
+
+        for (int i = 1; i < count; i++) {
+            final int bound = bound(text, (int) ((long) length * i / count));
+            if (bound > bounds[size - 1] && bound < length) {
+                bounds[size++] = bound;
+            }
+        }
+
+        bounds[size++] = length;
+
+        return size == bounds.length
+                ? bounds
+                : Arrays.copyOf(bounds, size);
+    }
+
+    // a bound right after a blank line, or a line end or the position itself
+    private static int bound(@NotNull String text, int position) {
+
+        final int blankLine = text.indexOf("\n\n", position);
+        if (blankLine != -1 && blankLine - position < BLANK_LINE_DISTANCE) {
+            return blankLine + 2;
+        }
+
+        final int newLine = text.indexOf('\n', position);
+        if (newLine != -1 && newLine - position < BLANK_LINE_DISTANCE) {
+            return newLine + 1;
+        }
+
+        return position;
+    }
+
+    private ParallelTokenizer() {
+    }
+
+    private static class ChunkTask extends RecursiveTask<SearchLog> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Prism4j prism4j;
+        private final String text;
+        private final Prism4j.Grammar grammar;
+        private final int[] bounds;
+
+        // indices in bounds
+        private final int from;
+        private final int to;
+
+        ChunkTask(
+                @NotNull Prism4j prism4j,
+                @NotNull String text,
+                @NotNull Prism4j.Grammar grammar,
+                @NotNull int[] bounds,
+                int from,
+                int to) {
+            this.prism4j = prism4j;
+            this.text = text;
+            this.grammar = grammar;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SearchLog compute() {
+
+            if (to - from == 1) {
+                final IncrementalMatchContext context = new IncrementalMatchContext(text);
+                prism4j.match(context, bounds[from], bounds[to], context.compile(grammar), 0, Prism4j.MATCH_LOG);
+                return context.log();
+            }
+
+            final int middle = (from + to) >>> 1;
+            final ChunkTask left = new ChunkTask(prism4j, text, grammar, bounds, from, middle);
+            left.fork();
+
+            final SearchLog log = new ChunkTask(prism4j, text, grammar, bounds, middle, to).compute();
+            log.addAll(left.join());
+            return log;
+        }
+    }
+}
@@ -11,6 +11,10 @@ public class PatternImpl implements Prism4j.Pattern {
     private final String alias;
     private final Prism4j.Grammar inside;
 
+    // results of regex analysis, computed when pattern is first compiled
+    Prefilter prefilter;
+    KeywordMatcher keywords;
+
     public PatternImpl(
             @NotNull java.util.regex.Pattern regex,
             boolean lookbehind,
@@ -0,0 +1,882 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Cheap check that tells if a region of the text can contain a match of a regex. Regex source
+ * is analyzed (once per {@link PatternImpl}, which stores the result) to find either a literal string that every match
+ * contains (for example, {@code /*} of a block comment) or a set of chars, at least one
+ * of which every match contains (for example, quotes of a string). If a region contains
+ * neither, matcher is not invoked at all.
+ * <p>
+ * Analysis gives up (no prefilter) on any construct it does not fully understand (inline flags,
+ * nested classes, unusual escapes, etc) and on patterns that can match an empty string. Chars
+ * outside of ASCII are not tracked individually (all of them are either in a set or not).
+ * Lookarounds are treated as zero-width (they are not required to contain anything), so a
+ * prefilter never rejects a region that has a match.
+ * <p>
+ * The same analysis tells if a regex is region-independent: it has no anchors, word boundaries,
+ * lookarounds, atomic groups or possessive quantifiers and cannot match an empty string. Such
+ * a regex never looks outside of a match, so a match found in a larger region is also the
+ * first match of any smaller region (with the same or later start) that contains it.
+ *
+ * @see MatchContext#search(CompiledGrammar, int, int, int)
+ */
+class Prefilter {
+
+    // cached result for a regex that cannot be filtered
+    private static final Prefilter NONE = new Prefilter(null, -1L, -1L, true, false);
+
+    private static final int UNSUPPORTED_FLAGS = java.util.regex.Pattern.COMMENTS
+            | java.util.regex.Pattern.LITERAL
+            | java.util.regex.Pattern.CANON_EQ
+            | java.util.regex.Pattern.UNICODE_CHARACTER_CLASS;
+
+    /**
+     * @return prefilter for the regex of the pattern or null if regex cannot be filtered
+     */
+    @Nullable
+    static Prefilter of(@NotNull Prism4j.Pattern pattern) {
+        final Prefilter prefilter = cached(pattern);
+        return prefilter.filters()
+                ? prefilter
+                : null;
+    }
+
+    /**
+     * @return if a match of the regex of the pattern does not depend on bounds of a region,
+     * so a search can be performed in a larger region
+     * @see MatchContext#search(CompiledGrammar, int, int, int)
+     */
+    static boolean isRegionIndependent(@NotNull Prism4j.Pattern pattern) {
+        return cached(pattern).regionIndependent;
+    }
+
+    // patterns are shared by grammars (and are created once), so a grammar that is compiled
+    // by each call does not analyze its regex again. Result is immutable, so a race only
+    // means that it is computed more than once. Other implementations of a pattern are not cached
+    @NotNull
+    private static Prefilter cached(@NotNull Prism4j.Pattern pattern) {
+        if (!(pattern instanceof PatternImpl)) {
+            return analyze(pattern.regex());
+        }
+        final PatternImpl impl = (PatternImpl) pattern;
+        Prefilter prefilter = impl.prefilter;
+        if (prefilter == null) {
+            prefilter = analyze(pattern.regex());
+            impl.prefilter = prefilter;
+        }
+        return prefilter;
+    }
+
+    @NotNull
+    private static Prefilter analyze(@NotNull java.util.regex.Pattern regex) {
+
+        final int flags = regex.flags();
+        if ((flags & UNSUPPORTED_FLAGS) != 0) {
+            return NONE;
+        }
+
+        final Parser parser = new Parser(
+                regex.pattern(),
+                (flags & java.util.regex.Pattern.CASE_INSENSITIVE) != 0,
+                (flags & java.util.regex.Pattern.UNICODE_CASE) != 0
+        );
+
+        final Info info;
+        try {
+            info = parser.parse();
+        } catch (UnsupportedException e) {
+            return NONE;
+        }
+
+        if (info.nullable) {
+            return NONE;
+        }
+
+        final boolean regionIndependent = parser.regionIndependent;
+
+        // a literal is checked with a single char comparison for most positions, the same as a set,
+        // but rejects much more regions
+        if (info.literal.length() > 1) {
+            return new Prefilter(info.literal, 0L, 0L, false, regionIndependent);
+        }
+
+        final Chars chars = info.chars;
+        if (chars != null) {
+            return new Prefilter(null, chars.low, chars.high, chars.nonAscii, regionIndependent);
+        }
+
+        return regionIndependent
+                ? new Prefilter(null, -1L, -1L, true, true)
+                : NONE;
+    }
+
+    // either a literal or a set of chars
+    @Nullable
+    final String literal;
+
+    // ASCII chars [0, 64) and [64, 128)
+    final long low;
+    final long high;
+
+    final boolean nonAscii;
+
+    final boolean regionIndependent;
+
+    private Prefilter(
+            @Nullable String literal,
+            long low,
+            long high,
+            boolean nonAscii,
+            boolean regionIndependent) {
+        this.literal = literal;
+        this.low = low;
+        this.high = high;
+        this.nonAscii = nonAscii;
+        this.regionIndependent = regionIndependent;
+    }
+
+    // a set of all chars rejects nothing
+    private boolean filters() {
+        return literal != null
+                || low != -1L
+                || high != -1L
+                || !nonAscii;
+    }
+
+    /**
+     * @return false if region of the text certainly contains no match
+     */
+    boolean mayMatch(@NotNull CharSequence text, int start, int end) {
+
+        final String literal = this.literal;
+        if (literal != null) {
+            final char first = literal.charAt(0);
+            final int length = literal.length();
+            for (int i = start, last = end - length; i <= last; i++) {
+                if (text.charAt(i) == first && matches(text, i, literal, length)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            // shift distance is taken modulo 64
+            if (c < 64 ? (low & (1L << c)) != 0 : c < 128 ? (high & (1L << c)) != 0 : nonAscii) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // first char is already compared
+    private static boolean matches(@NotNull CharSequence text, int index, @NotNull String literal, int length) {
+        for (int i = 1; i < length; i++) {
+            if (text.charAt(index + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // set of ASCII chars and a flag for all other chars
+    static class Chars {
+
+        long low;
+        long high;
+        boolean nonAscii;
+
+        void add(int c) {
+            if (c < 64) {
+                low |= 1L << c;
+            } else if (c < 128) {
+                high |= 1L << c;
+            } else {
+                nonAscii = true;
+            }
+        }
+
+        void addRange(int from, int to) {
+            for (int c = from, last = Math.min(to, 127); c <= last; c++) {
+                add(c);
+            }
+            if (to > 127) {
+                nonAscii = true;
+            }
+        }
+
+        void addAll(@NotNull Chars other) {
+            low |= other.low;
+            high |= other.high;
+            nonAscii |= other.nonAscii;
+        }
+
+        boolean contains(int c) {
+            return c < 64
+                    ? (low & (1L << c)) != 0
+                    : c < 128 ? (high & (1L << c)) != 0 : nonAscii;
+        }
+
+        void complement() {
+            low = ~low;
+            high = ~high;
+            nonAscii = true;
+        }
+
+        // adds other case of ASCII letters (with unicode case some non-ASCII chars match ASCII letters,
+        // for example, KELVIN SIGN and `k`, so both are added)
+        void foldCase(boolean unicodeCase) {
+            if (unicodeCase && nonAscii) {
+                addRange('A', 'Z');
+                addRange('a', 'z');
+            }
+            boolean letters = false;
+            for (int c = 'A'; c <= 'Z'; c++) {
+                final int lower = c + ('a' - 'A');
+                if (contains(c) || contains(lower)) {
+                    add(c);
+                    add(lower);
+                    letters = true;
+                }
+            }
+            if (unicodeCase && letters) {
+                nonAscii = true;
+            }
+        }
+
+        boolean isAll() {
+            return low == -1L && high == -1L && nonAscii;
+        }
+
+        // non-ASCII chars are counted as a lot of chars
+        int weight() {
+            return Long.bitCount(low) + Long.bitCount(high) + (nonAscii ? 1024 : 0);
+        }
+
+        @NotNull
+        static Chars of(int c) {
+            final Chars chars = new Chars();
+            chars.add(c);
+            return chars;
+        }
+
+        @NotNull
+        static Chars all() {
+            final Chars chars = new Chars();
+            chars.complement();
+            return chars;
+        }
+    }
+
+    /**
+     * What is known about every match of a part of a regex
+     */
+    static class Info {
+
+        static final Info EMPTY = new Info(true, null, "", "", "", "");
+
+        static final Info UNKNOWN = new Info(true, null, null, "", "", "");
+
+        // can match an empty string
+        final boolean nullable;
+
+        // every match contains one of these chars (null if there is no such set)
+        @Nullable
+        final Chars chars;
+
+        // the only string that is matched (null if there are others)
+        @Nullable
+        final String exact;
+
+        // every match starts with `head`, ends with `tail` and contains `literal`
+        @NotNull
+        final String head;
+        @NotNull
+        final String tail;
+        @NotNull
+        final String literal;
+
+        Info(
+                boolean nullable,
+                @Nullable Chars chars,
+                @Nullable String exact,
+                @NotNull String head,
+                @NotNull String tail,
+                @NotNull String literal) {
+            this.nullable = nullable;
+            this.chars = chars;
+            this.exact = exact;
+            this.head = head;
+            this.tail = tail;
+            this.literal = literal;
+        }
+
+        @NotNull
+        static Info of(char c) {
+            final String s = String.valueOf(c);
+            return new Info(false, Chars.of(c), s, s, s, s);
+        }
+
+        @NotNull
+        static Info of(@NotNull Chars chars) {
+            return new Info(false, chars, null, "", "", "");
+        }
+
+        // one or more times
+        @NotNull
+        Info repeated() {
+            return new Info(nullable, chars, null, head, tail, literal);
+        }
+
+        @NotNull
+        Info then(@NotNull Info next) {
+            final Chars chars;
+            if (this.chars == null) {
+                chars = next.chars;
+            } else if (next.chars == null) {
+                chars = this.chars;
+            } else {
+                chars = this.chars.weight() <= next.chars.weight()
+                        ? this.chars
+                        : next.chars;
+            }
+            return new Info(
+                    nullable && next.nullable,
+                    chars,
+                    exact != null && next.exact != null ? exact + next.exact : null,
+                    exact != null ? exact + next.head : head,
+                    next.exact != null ? tail + next.exact : next.tail,
+                    longest(longest(literal, next.literal), tail + next.head)
+            );
+        }
+
+        @NotNull
+        Info or(@NotNull Info other) {
+            final Chars chars;
+            if (this.chars == null || other.chars == null) {
+                chars = null;
+            } else {
+                chars = new Chars();
+                chars.addAll(this.chars);
+                chars.addAll(other.chars);
+            }
+            return new Info(
+                    nullable || other.nullable,
+                    chars,
+                    exact != null && exact.equals(other.exact) ? exact : null,
+                    commonPrefix(head, other.head),
+                    commonSuffix(tail, other.tail),
+                    literal.equals(other.literal) ? literal : ""
+            );
+        }
+
+        @NotNull
+        private static String longest(@NotNull String a, @NotNull String b) {
+            return b.length() > a.length() ? b : a;
+        }
+
+        @NotNull
+        private static String commonPrefix(@NotNull String a, @NotNull String b) {
+            final int length = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < length && a.charAt(i) == b.charAt(i)) {
+                i += 1;
+            }
+            return a.substring(0, i);
+        }
+
+        @NotNull
+        private static String commonSuffix(@NotNull String a, @NotNull String b) {
+            final int length = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < length && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+                i += 1;
+            }
+            return a.substring(a.length() - i);
+        }
+    }
+
+    // recursive descent over the regex source, throws UnsupportedException when unsure
+    private static class Parser {
+
+        // escapes that stand for a set of chars
+        private static final String CLASS_ESCAPES = "dDwWsSRhHvVXpP";
+
+        private final String source;
+        private final int length;
+        private final boolean caseInsensitive;
+        private final boolean unicodeCase;
+
+        private int index;
+
+        // cleared by constructs that look outside of a match or depend on region bounds
+        boolean regionIndependent = true;
+
+        Parser(@NotNull String source, boolean caseInsensitive, boolean unicodeCase) {
+            this.source = source;
+            this.length = source.length();
+            this.caseInsensitive = caseInsensitive;
+            this.unicodeCase = unicodeCase;
+        }
+
+        @NotNull
+        Info parse() {
+            final Info info = alternation();
+            if (index != length) {
+                throw new UnsupportedException();
+            }
+            return info;
+        }
+
+        @NotNull
+        private Info alternation() {
+            Info info = sequence();
+            while (index < length && source.charAt(index) == '|') {
+                index += 1;
+                info = info.or(sequence());
+            }
+            return info;
+        }
+
+        @NotNull
+        private Info sequence() {
+            Info info = Info.EMPTY;
+            while (index < length) {
+                final char c = source.charAt(index);
+                if (c == '|' || c == ')') {
+                    break;
+                }
+                info = info.then(quantified(atom()));
+            }
+            return info;
+        }
+
+        @NotNull
+        private Info quantified(@NotNull Info atom) {
+
+            if (index == length) {
+                return atom;
+            }
+
+            final int min;
+
+            switch (source.charAt(index)) {
+                case '*':
+                case '?':
+                    index += 1;
+                    min = 0;
+                    break;
+                case '+':
+                    index += 1;
+                    min = 1;
+                    break;
+                case '{':
+                    index += 1;
+                    min = number();
+                    char c = next();
+                    if (c == ',') {
+                        if (peek() != '}') {
+                            number();
+                        }
+                        c = next();
+                    }
+                    if (c != '}') {
+                        throw new UnsupportedException();
+                    }
+                    break;
+                default:
+                    return atom;
+            }
+
+            // lazy or possessive
+            if (index < length && (source.charAt(index) == '?' || source.charAt(index) == '+')) {
+                if (source.charAt(index) == '+') {
+                    regionIndependent = false;
+                }
+                index += 1;
+            }
+
+            return min == 0
+                    ? Info.UNKNOWN
+                    : atom.repeated();
+        }
+
+        private int number() {
+            final int start = index;
+            while (index < length && Character.isDigit(source.charAt(index))) {
+                index += 1;
+            }
+            if (start == index || index - start > 6) {
+                throw new UnsupportedException();
+            }
+            return Integer.parseInt(source.substring(start, index));
+        }
+
+        @NotNull
+        private Info atom() {
+            final char c = next();
+            switch (c) {
+                case '(':
+                    return group();
+                case '[':
+                    return Info.of(charClass());
+                case '\\':
+                    return escape();
+                case '.':
+                    return Info.of(Chars.all());
+                case '^':
+                case '$':
+                    regionIndependent = false;
+                    return Info.EMPTY;
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new UnsupportedException();
+                default:
+                    return literal(c);
+            }
+        }
+
+        @NotNull
+        private Info literal(char c) {
+            // a quantifier after a surrogate pair applies to the whole code point
+            if (Character.isSurrogate(c)) {
+                throw new UnsupportedException();
+            }
+            if (caseInsensitive) {
+                if (c < 128 && Character.isLetter(c)) {
+                    final Chars chars = Chars.of(c);
+                    chars.foldCase(unicodeCase);
+                    return Info.of(chars);
+                }
+                // with unicode case a non-ASCII char can match an ASCII letter
+                if (c >= 128 && unicodeCase) {
+                    return Info.of(Chars.all());
+                }
+            }
+            return Info.of(c);
+        }
+
+        @NotNull
+        private Info group() {
+
+            boolean zeroWidth = false;
+
+            if (peek() == '?') {
+                index += 1;
+                final char c = next();
+                if (c == '=' || c == '!') {
+                    zeroWidth = true;
+                } else if (c == '<') {
+                    final char d = peek();
+                    if (d == '=' || d == '!') {
+                        index += 1;
+                        zeroWidth = true;
+                    } else {
+                        // named group
+                        while (next() != '>') {
+                            // skip name
+                        }
+                    }
+                } else if (c == '>') {
+                    // atomic group
+                    regionIndependent = false;
+                } else if (c != ':') {
+                    // inline flags
+                    throw new UnsupportedException();
+                }
+            }
+
+            if (zeroWidth) {
+                regionIndependent = false;
+            }
+
+            final Info info = alternation();
+
+            if (next() != ')') {
+                throw new UnsupportedException();
+            }
+
+            return zeroWidth
+                    ? Info.EMPTY
+                    : info;
+        }
+
+        @NotNull
+        private Info escape() {
+            final char c = next();
+            switch (c) {
+                case 'b':
+                case 'B':
+                    // `\b{g}`
+                    if (peek() == '{') {
+                        throw new UnsupportedException();
+                    }
+                    regionIndependent = false;
+                    return Info.EMPTY;
+                case 'A':
+                case 'G':
+                case 'z':
+                case 'Z':
+                    regionIndependent = false;
+                    return Info.EMPTY;
+                case 'Q': {
+                    final int end = source.indexOf("\\E", index);
+                    final int quoteEnd = end != -1 ? end : length;
+                    Info info = Info.EMPTY;
+                    while (index < quoteEnd) {
+                        info = info.then(literal(source.charAt(index++)));
+                    }
+                    index = end != -1 ? end + 2 : length;
+                    return info;
+                }
+                case 'k':
+                    if (next() != '<') {
+                        throw new UnsupportedException();
+                    }
+                    while (next() != '>') {
+                        // skip name
+                    }
+                    return Info.UNKNOWN;
+                default:
+                    if (c >= '1' && c <= '9') {
+                        // back reference, can match anything (including an empty string)
+                        while (index < length && Character.isDigit(source.charAt(index))) {
+                            index += 1;
+                        }
+                        return Info.UNKNOWN;
+                    }
+                    final Chars chars = escapedChars(c);
+                    if (chars != null) {
+                        return Info.of(chars);
+                    }
+                    return literal((char) escapedChar(c));
+            }
+        }
+
+        // set of chars for class escapes or null if escape is a single char
+        @Nullable
+        private Chars escapedChars(char c) {
+            final Chars chars;
+            switch (c) {
+                case 'd':
+                case 'D':
+                    chars = new Chars();
+                    chars.addRange('0', '9');
+                    break;
+                case 'w':
+                case 'W':
+                    chars = new Chars();
+                    chars.addRange('a', 'z');
+                    chars.addRange('A', 'Z');
+                    chars.addRange('0', '9');
+                    chars.add('_');
+                    break;
+                case 's':
+                case 'S':
+                    chars = new Chars();
+                    chars.add(' ');
+                    chars.addRange('\t', '\r');
+                    break;
+                case 'R':
+                    // linebreak is an atomic group
+                    regionIndependent = false;
+                    chars = new Chars();
+                    chars.addRange('\n', '\r');
+                    chars.nonAscii = true;
+                    return chars;
+                case 'h':
+                case 'H':
+                case 'v':
+                case 'V':
+                    return Chars.all();
+                case 'X':
+                    // grapheme cluster depends on chars after it
+                    regionIndependent = false;
+                    return Chars.all();
+                case 'p':
+                case 'P':
+                    if (peek() == '{') {
+                        while (next() != '}') {
+                            // skip property name
+                        }
+                    } else {
+                        index += 1;
+                    }
+                    return Chars.all();
+                default:
+                    return null;
+            }
+            if (Character.isUpperCase(c)) {
+                chars.complement();
+            }
+            return chars;
+        }
+
+        // value of an escaped single char
+        private int escapedChar(char c) {
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                case 'c':
+                    return next() ^ 64;
+                case 'x':
+                    if (peek() == '{') {
+                        index += 1;
+                        final int end = source.indexOf('}', index);
+                        if (end == -1) {
+                            throw new UnsupportedException();
+                        }
+                        final int value = hex(index, end);
+                        index = end + 1;
+                        return value;
+                    }
+                    index += 2;
+                    return hex(index - 2, index);
+                case 'u':
+                    index += 4;
+                    return hex(index - 4, index);
+                default:
+                    // octal, unknown escapes and other letters
+                    if (c < 128 && Character.isLetterOrDigit(c)) {
+                        throw new UnsupportedException();
+                    }
+                    return c;
+            }
+        }
+
+        // only BMP chars that are not surrogates
+        private int hex(int start, int end) {
+            if (start >= end || end > length || end - start > 4) {
+                throw new UnsupportedException();
+            }
+            final int value;
+            try {
+                value = Integer.parseInt(source.substring(start, end), 16);
+            } catch (NumberFormatException e) {
+                throw new UnsupportedException();
+            }
+            if (Character.isSurrogate((char) value)) {
+                throw new UnsupportedException();
+            }
+            return value;
+        }
+
+        @NotNull
+        private Chars charClass() {
+
+            final boolean negate = peek() == '^';
+            if (negate) {
+                index += 1;
+            }
+
+            // java treats `]` at the start of a class differently
+            if (peek() == ']') {
+                throw new UnsupportedException();
+            }
+
+            final Chars chars = new Chars();
+
+            while (true) {
+
+                final char c = next();
+                if (c == ']') {
+                    break;
+                }
+
+                // nested classes, unions and intersections
+                if (c == '[' || (c == '&' && peek() == '&')) {
+                    throw new UnsupportedException();
+                }
+
+                final int from;
+                if (c == '\\') {
+                    final char e = next();
+                    final Chars escaped = escapedChars(e);
+                    if (escaped != null) {
+                        chars.addAll(escaped);
+                        continue;
+                    }
+                    from = classChar((char) escapedChar(e));
+                } else {
+                    from = classChar(c);
+                }
+
+                if (peek() == '-' && index + 1 < length && source.charAt(index + 1) != ']') {
+                    index += 1;
+                    final char d = next();
+                    final int to;
+                    if (d == '\\') {
+                        final char e = next();
+                        if (CLASS_ESCAPES.indexOf(e) != -1) {
+                            throw new UnsupportedException();
+                        }
+                        to = classChar((char) escapedChar(e));
+                    } else {
+                        to = classChar(d);
+                    }
+                    if (to < from) {
+                        throw new UnsupportedException();
+                    }
+                    chars.addRange(from, to);
+                } else {
+                    chars.add(from);
+                }
+            }
+
+            if (negate) {
+                chars.complement();
+            }
+
+            if (caseInsensitive) {
+                chars.foldCase(unicodeCase);
+            }
+
+            return chars;
+        }
+
+        private int classChar(char c) {
+            if (Character.isSurrogate(c)) {
+                throw new UnsupportedException();
+            }
+            return c;
+        }
+
+        private char peek() {
+            return index < length
+                    ? source.charAt(index)
+                    : 0;
+        }
+
+        private char next() {
+            if (index >= length) {
+                throw new UnsupportedException();
+            }
+            return source.charAt(index++);
+        }
+    }
+
+    private static class UnsupportedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -3,10 +3,14 @@ package io.noties.prism4j;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 public class Prism4j {
 
@@ -172,192 +176,869 @@ public class Prism4j {
     }
 
 
+    // how `match` creates content of matched tokens: inside grammars are applied right away, or
+    // are left to LazySyntax, or are left to LazySyntax and content of a token without an inside
+    // grammar is not created at all (such nodes are never returned, only emitted, see `emit`), or
+    // inside grammars are applied right away only for their searches and no content is created
+    // (only searches recorded by the context are used, see ParallelTokenizer)
+    static final int MATCH_EAGER = 0;
+    static final int MATCH_LAZY = 1;
+    static final int MATCH_EMIT = 2;
+    static final int MATCH_LOG = 3;
+
     private final GrammarLocator grammarLocator;
+    private final boolean scanPatterns;
+    private final int maxNestingDepth;
+
+    private volatile TokenizeProfiler profiler;
 
     public Prism4j(@NotNull GrammarLocator grammarLocator) {
+        this(grammarLocator, false);
+    }
+
+    /**
+     * @param scanPatterns if a search of a pattern that does not depend on region bounds (no anchors,
+     *                     word boundaries, lookarounds or lookbehind group) must look ahead of
+     *                     a text fragment, so its result answers searches in the following fragments
+     *                     without calling the matcher again. Result of tokenization is the same, but
+     *                     it is faster only for grammars with patterns that are searched in a lot of
+     *                     fragments before a match (a pattern that matches often or a greedy one
+     *                     gains nothing). Applies to {@link #tokenize(String, Grammar)}
+     *                     and {@link #tokenize(CharSequence, Grammar, TokenSink)}
+     */
+    public Prism4j(@NotNull GrammarLocator grammarLocator, boolean scanPatterns) {
+        this(grammarLocator, scanPatterns, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Tokenization does not recurse on the Java stack, so deeply nested input (markup, markdown, latex)
+     * cannot cause a {@link StackOverflowError} on a thread with a small stack.
+     *
+     * @param scanPatterns    see {@link #Prism4j(GrammarLocator, boolean)}
+     * @param maxNestingDepth maximum number of nested inside grammars that are applied (0 means
+     *                        no inside grammar is applied). Content of a token that is nested deeper
+     *                        is kept as a single text node. Unlimited by default
+     */
+    public Prism4j(@NotNull GrammarLocator grammarLocator, boolean scanPatterns, int maxNestingDepth) {
+        if (maxNestingDepth < 0) {
+            throw new IllegalArgumentException("maxNestingDepth must not be negative: " + maxNestingDepth);
+        }
         this.grammarLocator = grammarLocator;
+        this.scanPatterns = scanPatterns;
+        this.maxNestingDepth = maxNestingDepth;
     }
 
     @NotNull
     public List<Node> tokenize(@NotNull String text, @NotNull Grammar grammar) {
-        final List<Node> entries = new ArrayList<>(3);
-        entries.add(new TextImpl(text));
-        matchGrammar(text, entries, grammar, 0, 0, false, null);
-        return entries;
+        return tokenize((CharSequence) text, grammar);
     }
 
-    @Nullable
-    public Grammar grammar(@NotNull String name) {
-        return grammarLocator.grammar(this, name);
+    /**
+     * Tokenizes any text (for example, {@link MappedText} of a huge file), text is not copied:
+     * nodes reference it by offsets and literals are created only when accessed. Text must
+     * not be modified while nodes are used.
+     */
+    @NotNull
+    public List<Node> tokenize(@NotNull CharSequence text, @NotNull Grammar grammar) {
+        final Object event = Events.beginTokenize();
+        final MatchContext context = context(text);
+        final List<Node> nodes = tokenize(context, 0, text.length(), context.compile(grammar));
+        context.finish();
+        if (event != null) {
+            Events.commitTokenize(event, grammar, text.length(), Events.nodeCount(nodes));
+        }
+        return nodes;
+    }
+
+    /**
+     * Tokenizes text within a budget (time or number of chars read by pattern searches). A single
+     * pattern can backtrack catastrophically on some input (for example, a long unterminated
+     * emphasis in markdown) and a regex search cannot be interrupted otherwise. When budget runs out
+     * the search is interrupted and tokenization finishes right away with partially tokenized
+     * nodes, the responsible token and pattern are reported by the result.
+     *
+     * @see TokenizeResult
+     */
+    @NotNull
+    public TokenizeResult tokenize(@NotNull String text, @NotNull Grammar grammar, @NotNull TokenizeBudget budget) {
+        return tokenize((CharSequence) text, grammar, budget);
+    }
+
+    /**
+     * @see #tokenize(String, Grammar, TokenizeBudget)
+     * @see #tokenize(CharSequence, Grammar)
+     */
+    @NotNull
+    public TokenizeResult tokenize(@NotNull CharSequence text, @NotNull Grammar grammar, @NotNull TokenizeBudget budget) {
+        final Object event = Events.beginTokenize();
+        final BudgetMatchContext context = new BudgetMatchContext(text, budget);
+        final List<Node> nodes = tokenize(context, 0, text.length(), context.compile(grammar));
+        if (event != null) {
+            Events.commitTokenize(event, grammar, text.length(), Events.nodeCount(nodes));
+        }
+        return new TokenizeResult(nodes, context.exhaustedToken(), context.exhaustedPattern());
+    }
+
+    /**
+     * Tokenizes text, but content of tokens with an inside grammar is tokenized only when
+     * {@link Syntax#children()} of such a node is accessed for the first time (thread-safely,
+     * it is computed once). So large tokens (for example, a `script` block in markup) that are
+     * never inspected cost neither time nor memory. Accessed children are equal to the ones
+     * {@link #tokenize(String, Grammar)} returns.
+     * <p>
+     * Grammar (unless it is frozen) must not be modified while children are not accessed.
+     * Lazy children are tokenized without a profiler.
+     */
+    @NotNull
+    public List<Node> tokenizeLazy(@NotNull String text, @NotNull Grammar grammar) {
+        return tokenizeLazy((CharSequence) text, grammar);
+    }
+
+    /**
+     * @see #tokenizeLazy(String, Grammar)
+     * @see #tokenize(CharSequence, Grammar)
+     */
+    @NotNull
+    public List<Node> tokenizeLazy(@NotNull CharSequence text, @NotNull Grammar grammar) {
+        final MatchContext context = context(text);
+        final NodeLinkedList entries = match(context, 0, text.length(), context.compile(grammar), 0, MATCH_LAZY);
+        context.finish();
+        return entries.toList();
+    }
+
+    /**
+     * Same as {@link #tokenizeProgressive(String, Grammar, Executor)} with the common pool
+     */
+    @NotNull
+    public ProgressiveResult tokenizeProgressive(@NotNull String text, @NotNull Grammar grammar) {
+        return tokenizeProgressive(text, grammar, ForkJoinPool.commonPool());
     }
 
-    private void matchGrammar(
-            @NotNull String text,
-            @NotNull List<Node> entries,
+    /**
+     * Tokenizes text in two phases: top-level tokens are matched right away (content of tokens
+     * with an inside grammar is left as text), so a huge text can be highlighted coarsely without
+     * waiting, then inside grammars are applied by the executor. See {@link ProgressiveResult}.
+     * <p>
+     * Grammar (unless it is frozen) must not be modified until refined result is completed.
+     */
+    @NotNull
+    public ProgressiveResult tokenizeProgressive(@NotNull String text, @NotNull Grammar grammar, @NotNull Executor executor) {
+        return tokenizeProgressive((CharSequence) text, grammar, executor);
+    }
+
+    /**
+     * @see #tokenizeProgressive(String, Grammar, Executor)
+     * @see #tokenize(CharSequence, Grammar)
+     */
+    @NotNull
+    public ProgressiveResult tokenizeProgressive(@NotNull CharSequence text, @NotNull Grammar grammar, @NotNull Executor executor) {
+        return ProgressiveResult.create(tokenizeLazy(text, grammar), executor);
+    }
+
+    /**
+     * Tokenizes text into a compact {@link TokenStream} (start, end, type, alias and depth of each
+     * syntax node backed by primitive arrays) instead of a tree of nodes. Stream contains exactly the
+     * same syntax nodes as {@link #tokenize(String, Grammar)} returns. Entries are written while text
+     * is tokenized (see {@link #tokenize(CharSequence, Grammar, TokenSink)}), so the tree is never
+     * retained.
+     */
+    @NotNull
+    public TokenStream tokenizeToStream(@NotNull CharSequence text, @NotNull Grammar grammar) {
+        final TokenStream.Builder builder = new TokenStream.Builder(text);
+        tokenize(text, grammar, builder);
+        return builder.build();
+    }
+
+    /**
+     * Tokenizes text and pushes result into the sink instead of returning a list of nodes. Content
+     * of a token with an inside grammar is tokenized when the token is emitted and each node is
+     * released as soon as its events are sent, so apart from top-level nodes only a single subtree
+     * exists at a time and the sink can write output (for example, html) without the whole tree
+     * being retained. Top-level nodes are kept until the whole text is tokenized (each token of
+     * the grammar is matched against all of them), so memory usage still grows with the number of
+     * top-level tokens: to highlight a huge input with a bounded heap use
+     * {@link #tokenize(Reader, Grammar, TokenSink)}.
+     *
+     * @see TokenSink
+     */
+    public void tokenize(@NotNull CharSequence text, @NotNull Grammar grammar, @NotNull TokenSink sink) {
+        final Object event = Events.beginTokenize();
+        final MatchContext context = context(text);
+        final NodeLinkedList entries = match(context, 0, text.length(), context.compile(grammar), 0, MATCH_EMIT);
+        final ArrayDeque<Iterator<? extends Node>> stack = new ArrayDeque<>();
+        final Iterator<Node> nodes = entries.drain();
+        int position = 0;
+        int nodeCount = 0;
+        while (nodes.hasNext()) {
+            final Node node = nodes.next();
+            nodeCount += emit(context, node, position, sink, stack);
+            position += node.textLength();
+        }
+        context.finish();
+        if (event != null) {
+            Events.commitTokenize(event, grammar, text.length(), nodeCount);
+        }
+    }
+
+    /**
+     * Same as {@link #tokenize(Reader, Grammar, TokenSink, int)} with a window of 64K chars
+     */
+    public void tokenize(@NotNull Reader reader, @NotNull Grammar grammar, @NotNull TokenSink sink) throws IOException {
+        tokenize(reader, grammar, sink, ReaderTokenizer.DEFAULT_WINDOW_LENGTH);
+    }
+
+    /**
+     * Tokenizes input of a reader (for example, a piped git diff or a build log) progressively,
+     * keeping only a window of input in memory, so memory usage does not depend on the input size.
+     * Input is sent to the sink in chunks that end at line starts when possible, otherwise after
+     * a whitespace or at a bound of a token (see {@link TokenSink#onChunk(CharSequence)}), positions
+     * of events are relative to the current chunk. Tokens never span chunks, words are split only
+     * if there is no other place to cut the window at.
+     * <p>
+     * The first half of the window is sent when the whole window is tokenized, the second half is
+     * a lookahead, so result is the same as of {@link #tokenize(CharSequence, Grammar, TokenSink)}
+     * unless a token is longer than half of the window. Reader is not closed.
+     *
+     * @param windowLength number of chars that are kept in memory (at least 2)
+     */
+    public void tokenize(
+            @NotNull Reader reader,
             @NotNull Grammar grammar,
-            int index,
-            int startPosition,
-            boolean oneShot,
-            @Nullable Token target
-    ) {
+            @NotNull TokenSink sink,
+            int windowLength) throws IOException {
+        ReaderTokenizer.tokenize(this, reader, grammar, sink, windowLength);
+    }
 
-        final int textLength = text.length();
+    /**
+     * Tokenizes text and keeps information required to update the result after the text is edited,
+     * see {@link #retokenize(IncrementalResult, int, int, String)}
+     */
+    @NotNull
+    public IncrementalResult tokenizeIncremental(@NotNull String text, @NotNull Grammar grammar) {
+        final IncrementalMatchContext context = new IncrementalMatchContext(text);
+        final List<Node> nodes = tokenize(context, 0, text.length(), context.compile(grammar));
+        return new IncrementalResult(text, grammar, nodes, context.log());
+    }
 
-        for (Token token : grammar.tokens()) {
+    /**
+     * Tokenizes previous text with an edit applied (`removedLength` characters starting at `offset`
+     * are replaced with `insertedText`). Result is always equal to {@link #tokenize(String, Grammar)}
+     * of the edited text, but pattern searches whose result cannot be affected by the edit
+     * (they have not read the edited part of the text) are not performed again.
+     * <p>
+     * Only regex work is saved: the whole text is still matched and all nodes are created again
+     * (nodes reference the text they were created for, so reusing nodes of the previous result
+     * would keep previous texts in memory). The cost of an update is proportional to the text length,
+     * usually it takes from a half to nearly all of the time of {@link #tokenize(String, Grammar)}.
+     *
+     * @param previous      result of {@link #tokenizeIncremental(String, Grammar)} or of a previous edit
+     * @param offset        of the edit in the previous text
+     * @param removedLength number of characters removed from the previous text at `offset`
+     * @param insertedText  text inserted at `offset`
+     */
+    @NotNull
+    public IncrementalResult retokenize(
+            @NotNull IncrementalResult previous,
+            int offset,
+            int removedLength,
+            @NotNull String insertedText) {
+
+        final String previousText = previous.text();
+
+        if (offset < 0
+                || removedLength < 0
+                || offset + removedLength > previousText.length()) {
+            throw new IllegalArgumentException("Edit is out of text bounds, offset: " + offset +
+                    ", removedLength: " + removedLength + ", text.length: " + previousText.length());
+        }
 
-            if (token == target) {
-                return;
+        final String text = previousText.substring(0, offset)
+                + insertedText
+                + previousText.substring(offset + removedLength);
+
+        final IncrementalMatchContext context = new IncrementalMatchContext(
+                text,
+                previous.log,
+                offset,
+                removedLength,
+                insertedText.length());
+
+        final Grammar grammar = previous.grammar();
+        final List<Node> nodes = tokenize(context, 0, text.length(), context.compile(grammar));
+        return new IncrementalResult(text, grammar, nodes, context.log());
+    }
+
+    /**
+     * Same as {@link #tokenizeParallel(String, Grammar, ForkJoinPool)} with the common pool
+     */
+    @NotNull
+    public List<Node> tokenizeParallel(@NotNull String text, @NotNull Grammar grammar) {
+        return tokenizeParallel(text, grammar, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Tokenizes large text using multiple threads. Text is split into chunks (at blank lines or
+     * line ends) that are tokenized by the pool, then results are merged by a sequential pass that
+     * takes every pattern search result from chunks when it is proven to be the same for the whole
+     * text (matcher has not reached the end of a chunk), other searches are performed again.
+     * So result is always equal to {@link #tokenize(String, Grammar)}, but the sequential pass
+     * still creates all the nodes.
+     * <p>
+     * Grammar must not be modified while text is tokenized. Small text is tokenized sequentially.
+     */
+    @NotNull
+    public List<Node> tokenizeParallel(@NotNull String text, @NotNull Grammar grammar, @NotNull ForkJoinPool pool) {
+        return ParallelTokenizer.tokenize(this, text, grammar, pool);
+    }
+
+    /**
+     * Tokenizes a batch of texts (for example, a lot of small snippets) in a single call, so the
+     * grammar is compiled and pattern matchers are created once for the whole batch instead of for each
+     * text. Results are in the order of texts and are equal to {@link #tokenize(CharSequence, Grammar)}
+     * of each text (nodes reference their own text, so {@link SyntaxImpl#source()} and positions
+     * of nodes are the same as if each text was tokenized separately).
+     */
+    @NotNull
+    public List<List<Node>> tokenizeAll(@NotNull List<? extends CharSequence> texts, @NotNull Grammar grammar) {
+        return BatchTokenizer.tokenize(this, texts, grammar);
+    }
+
+    /**
+     * Same as {@link #tokenizeAll(List, Grammar)}, but the batch is split into parts (of at least 16K chars)
+     * that are tokenized by the executor. Grammar must not be modified while texts are tokenized.
+     */
+    @NotNull
+    public List<List<Node>> tokenizeAll(
+            @NotNull List<? extends CharSequence> texts,
+            @NotNull Grammar grammar,
+            @NotNull Executor executor) {
+        return BatchTokenizer.tokenize(this, texts, grammar, executor);
+    }
+
+    /**
+     * Attaches a profiler that collects statistics of every pattern search performed by
+     * {@link #tokenize(String, Grammar)}, {@link #tokenize(CharSequence, Grammar, TokenSink)}
+     * and {@link #tokenizeToStream(CharSequence, Grammar)} (other tokenize methods are not profiled).
+     * Calls that are already running are not affected. Profiled calls do not use pattern scanning
+     * (see {@link #Prism4j(GrammarLocator, boolean)}).
+     *
+     * @param profiler to attach or null to detach current one
+     */
+    public void setProfiler(@Nullable TokenizeProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Nullable
+    public TokenizeProfiler profiler() {
+        return profiler;
+    }
+
+    /**
+     * Obtains grammar from the {@link GrammarLocator}. Each lookup emits a JFR event
+     * ({@code io.noties.prism4j.Grammar}) when it is enabled by a recording, as well as
+     * {@link #tokenize(String, Grammar)}, {@link #tokenize(String, Grammar, TokenizeBudget)}
+     * and {@link #tokenize(CharSequence, Grammar, TokenSink)} ({@code io.noties.prism4j.Tokenize}).
+     */
+    @Nullable
+    public Grammar grammar(@NotNull String name) {
+        final Object event = Events.beginGrammar();
+        final Grammar grammar = grammarLocator.grammar(this, name);
+        // marked even if events are not recorded, a grammar can be created before a recording is started
+        final boolean created = grammar != null && markLocated(grammar);
+        if (event != null) {
+            Events.commitGrammar(event, name, grammar != null, created);
+        }
+        return grammar;
+    }
+
+    // a locator returns a new instance when it creates a grammar and the same instance when it is
+    // cached, so the first return of an instance is its creation. Returns false for grammars
+    // that are not created by this library (they cannot be marked). Concurrent first lookups
+    // of the same instance can both report it
+    private static boolean markLocated(@NotNull Grammar grammar) {
+        if (grammar instanceof GrammarImpl) {
+            final GrammarImpl impl = (GrammarImpl) grammar;
+            if (!impl.located) {
+                impl.located = true;
+                return true;
+            }
+        } else if (grammar instanceof FrozenGrammar) {
+            final FrozenGrammar frozen = (FrozenGrammar) grammar;
+            if (!frozen.located) {
+                frozen.located = true;
+                return true;
             }
+        }
+        return false;
+    }
 
-            for (Pattern pattern : token.patterns()) {
+    @NotNull
+    MatchContext context(@NotNull CharSequence text) {
+        final TokenizeProfiler profiler = this.profiler;
+        return profiler != null
+                ? new ProfilingMatchContext(text, profiler)
+                : new MatchContext(text, scanPatterns);
+    }
 
-                final boolean lookbehind = pattern.lookbehind();
-                final boolean greedy = pattern.greedy();
-                int lookbehindLength = 0;
+    // all positions are absolute (in `text`), nodes reference `text` instead of holding copies of it
+    @NotNull
+    List<Node> tokenize(@NotNull MatchContext context, int start, int end, @NotNull CompiledGrammar grammar) {
+        return match(context, start, end, grammar).toList();
+    }
 
-                final java.util.regex.Pattern regex = pattern.regex();
+    // children of a LazySyntax
+    @NotNull
+    List<Node> tokenizeLazy(
+            @NotNull CharSequence text,
+            int start,
+            int end,
+            @NotNull CompiledGrammar grammar,
+            int depth) {
+        final MatchContext context = new MatchContext(text, scanPatterns);
+        return match(context, start, end, grammar, depth, MATCH_LAZY).toList();
+    }
 
-                // Don't cache textLength as it changes during the loop
-                for (int i = index, position = startPosition; i < entries.size(); position += entries.get(i).textLength(), ++i) {
+    @NotNull
+    private NodeLinkedList match(@NotNull MatchContext context, int start, int end, @NotNull CompiledGrammar grammar) {
+        return match(context, start, end, grammar, 0, MATCH_EAGER);
+    }
+
+    // `mode` is one of MATCH_* constants
+    @NotNull
+    NodeLinkedList match(
+            @NotNull MatchContext context,
+            int start,
+            int end,
+            @NotNull CompiledGrammar grammar,
+            int depth,
+            int mode) {
+        final NodeLinkedList entries = new NodeLinkedList();
+        entries.addAfter(entries.head, new TextImpl(context.text, start, end));
+        matchGrammar(context, new Frame(null, grammar, entries, start, end, entries.head, start, false, null, depth, mode));
+        return entries;
+    }
+
+    // sends events of the node and its children (nodes must be created with MATCH_EMIT), returns
+    // number of emitted nodes. Content of a lazy syntax node is tokenized with the context when
+    // the node is entered and is not kept by the node (its nodes are released as soon as they are
+    // emitted). `stack` (children left to emit of entered syntax nodes) is empty before and after the call
+    int emit(
+            @NotNull MatchContext context,
+            @NotNull Node root,
+            int position,
+            @NotNull TokenSink sink,
+            @NotNull ArrayDeque<Iterator<? extends Node>> stack) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            count += 1;
+            final int end = position + node.textLength();
+            if (node.isSyntax()) {
+                final Syntax syntax = (Syntax) node;
+                sink.onEnterSyntax(syntax.type(), syntax.alias(), position, end);
+                if (syntax.tokenized()) {
+                    stack.push(children(context, syntax));
+                } else {
+                    // content is a single text node (that MATCH_EMIT does not create)
+                    count += 1;
+                    sink.onText(position, end);
+                    sink.onExitSyntax();
+                    position = end;
+                }
+            } else {
+                sink.onText(position, end);
+                position = end;
+            }
+            node = null;
+            while (!stack.isEmpty()) {
+                final Iterator<? extends Node> children = stack.peek();
+                if (children.hasNext()) {
+                    node = children.next();
+                    break;
+                }
+                stack.pop();
+                sink.onExitSyntax();
+            }
+        }
+        return count;
+    }
+
+    @NotNull
+    private Iterator<? extends Node> children(@NotNull MatchContext context, @NotNull Syntax syntax) {
+        if (syntax instanceof LazySyntax) {
+            final LazySyntax lazy = (LazySyntax) syntax;
+            final CompiledGrammar inside = lazy.inside();
+            if (inside != null) {
+                return match(context, lazy.start(), lazy.end(), inside, lazy.depth(), MATCH_EMIT).drain();
+            }
+        }
+        return syntax.children().iterator();
+    }
+
+    // runs frames until the root one is finished, a frame is suspended (and its state saved) when
+    // it needs result of an inside grammar or a greedy rematch, so the Java stack depth does not
+    // depend on the nesting of the input
+    private void matchGrammar(@NotNull MatchContext context, @NotNull Frame root) {
+        Frame frame = root;
+        while (frame != null) {
+            frame = step(context, frame);
+        }
+    }
 
-                    if (entries.size() > textLength) {
-                        throw new RuntimeException("Prism4j internal error. Number of entry nodes " +
-                                "is greater that the text length.\n" +
-                                "Nodes: " + entries + "\n" +
-                                "Text: " + text);
+    // returns a frame to run next (a child frame that must be finished before this one is resumed,
+    // or the parent when this one is finished)
+    @Nullable
+    private Frame step(@NotNull MatchContext context, @NotNull Frame frame) {
+
+        final CharSequence text = context.text;
+        final CompiledGrammar grammar = frame.grammar;
+        final NodeLinkedList entries = frame.entries;
+        final int textStart = frame.textStart;
+        final int textEnd = frame.textEnd;
+        final int textLength = textEnd - textStart;
+
+        int state = frame.state;
+        int t = frame.t;
+        int pattern = frame.pattern;
+        int position = frame.position;
+        NodeLinkedList.Entry current = frame.current;
+
+        while (true) {
+            switch (state) {
+
+                case Frame.STATE_TOKEN: {
+                    if (t == grammar.tokenCount
+                            || grammar.tokens[t] == frame.target) {
+                        return finish(frame);
                     }
+                    pattern = grammar.tokenPatterns[t];
+                    state = Frame.STATE_PATTERN;
+                    break;
+                }
 
-                    final Node node = entries.get(i);
-                    if (isSyntaxNode(node)) {
-                        continue;
+                case Frame.STATE_PATTERN: {
+                    if (pattern == grammar.tokenPatterns[t + 1]) {
+                        t += 1;
+                        state = Frame.STATE_TOKEN;
+                        break;
                     }
+                    // `anchor` precedes the first entry to process, entries before it are never modified
+                    // (unlike the entry right after it, so it cannot be used as a starting point)
+                    position = frame.startPosition;
+                    current = frame.anchor.next;
+                    state = Frame.STATE_ENTRY;
+                    break;
+                }
 
-                    String str = ((Text) node).literal();
+                case Frame.STATE_ENTRY: {
 
-                    final Matcher matcher;
-                    final int deleteCount;
-                    final boolean greedyMatch;
-                    int greedyAdd = 0;
+                    final boolean greedy = grammar.greedy(pattern);
 
-                    if (greedy && i != entries.size() - 1) {
+                    // next pattern, unless a match is found
+                    state = Frame.STATE_NEXT_PATTERN;
 
-                        matcher = regex.matcher(text);
-                        // limit search to the position (?)
-                        matcher.region(position, textLength);
+                    for (; current != entries.tail; position += current.node.textLength(), current = current.next) {
 
-                        if (!matcher.find()) {
-                            break;
+                        if (entries.size() > textLength) {
+                            throw new RuntimeException("Prism4j internal error. Number of entry nodes " +
+                                    "is greater that the text length.\n" +
+                                    "Nodes: " + entries + "\n" +
+                                    "Text: " + text.subSequence(textStart, textEnd));
                         }
 
-                        int from = matcher.start();
-
-                        if (lookbehind) {
-                            from += matcher.group(1).length();
+                        final Node node = current.node;
+                        if (isSyntaxNode(node)) {
+                            continue;
                         }
-                        final int to = matcher.start() + matcher.group(0).length();
 
-                        int k = i;
-                        int p = position;
+                        // region of the text that is matched (`str` in prism-js)
+                        final int strStart;
+                        final int strEnd;
 
-                        for (int len = entries.size(); k < len && (p < to || (!isSyntaxNode(entries.get(k)) && !isGreedyNode(entries.get(k - 1)))); ++k) {
-                            p += entries.get(k).textLength();
-                            // Move the index i to the element in strarr that is closest to from
-                            if (from >= p) {
-                                i += 1;
-                                position = p;
+                        int deleteCount;
+
+                        if (greedy && current.next != entries.tail) {
+
+                            // limit search to the position (?)
+                            // Each search starts after the previous match (or after the syntax
+                            // node it was found in), so a match found ahead is never reused
+                            if (!context.search(grammar, pattern, position, textEnd)) {
+                                break;
                             }
-                        }
 
-                        if (isSyntaxNode(entries.get(i))) {
-                            continue;
-                        }
+                            final int from = context.matchStart;
+                            final int to = context.matchEnd;
+
+                            NodeLinkedList.Entry k = current;
+                            int p = position;
+                            deleteCount = 0;
+
+                            for (; k != entries.tail && (p < to || (!isSyntaxNode(k.node) && !isGreedyNode(k.prev.node))); k = k.next) {
+                                p += k.node.textLength();
+                                deleteCount += 1;
+                                // Move the current entry to the one that is closest to from
+                                if (from >= p) {
+                                    current = current.next;
+                                    position = p;
+                                    deleteCount -= 1;
+                                }
+                            }
 
-                        deleteCount = k - i;
-                        str = text.substring(position, p);
-                        greedyMatch = true;
-                        greedyAdd = -position;
+                            if (isSyntaxNode(current.node)) {
+                                continue;
+                            }
 
-                    } else {
-                        matcher = regex.matcher(str);
-                        deleteCount = 1;
-                        greedyMatch = false;
-                    }
+                            strStart = position;
+                            strEnd = p;
+
+                        } else {
 
-                    if (!greedyMatch && !matcher.find()) {
-                        if (oneShot) {
-                            break;
+                            strStart = position;
+                            strEnd = position + node.textLength();
+                            deleteCount = 1;
+
+                            if (!context.search(grammar, pattern, strStart, strEnd)) {
+                                if (frame.oneShot) {
+                                    break;
+                                }
+                                continue;
+                            }
                         }
-                        continue;
-                    }
 
-                    if (lookbehind) {
-                        final String group = matcher.group(1);
-                        lookbehindLength = group != null ? group.length() : 0;
-                    }
+                        final int from = context.matchStart;
+                        final int to = context.matchEnd;
 
-                    final int from = matcher.start() + greedyAdd + lookbehindLength;
-                    final String match;
-                    if (lookbehindLength > 0) {
-                        match = matcher.group().substring(lookbehindLength);
-                    } else {
-                        match = matcher.group();
-                    }
-                    final int to = from + match.length();
+                        NodeLinkedList.Entry insertAfter = current.prev;
+                        entries.removeRange(current, deleteCount);
 
-                    for (int d = 0; d < deleteCount; d++) {
-                        entries.remove(i);
-                    }
+                        if (from != strStart) {
+                            position = from;
+                            insertAfter = entries.addAfter(insertAfter, new TextImpl(text, strStart, from));
+                        }
 
-                    int i2 = i;
+                        frame.insertAfter = insertAfter;
+                        frame.from = from;
+                        frame.to = to;
+                        frame.strEnd = strEnd;
+                        frame.deleteCount = deleteCount;
+                        state = Frame.STATE_SYNTAX;
+
+                        if (grammar.inside(pattern) != null
+                                && frame.depth < maxNestingDepth) {
+                            if (isLazy(frame.mode)) {
+                                // syntax node will tokenize its content
+                                frame.children = null;
+                                break;
+                            }
+                            frame.save(state, t, pattern, position, null);
+                            final NodeLinkedList insideEntries = new NodeLinkedList();
+                            insideEntries.addAfter(insideEntries.head, new TextImpl(text, from, to));
+                            return new Frame(
+                                    frame,
+                                    context.inside(grammar, pattern),
+                                    insideEntries,
+                                    from,
+                                    to,
+                                    insideEntries.head,
+                                    from,
+                                    false,
+                                    null,
+                                    frame.depth + 1,
+                                    frame.mode);
+                        }
 
-                    if (from != 0) {
-                        final String before = str.substring(0, from);
-                        i += 1;
-                        position += before.length();
-                        entries.add(i2++, new TextImpl(before));
+                        frame.children = frame.mode == MATCH_EAGER || frame.mode == MATCH_LAZY
+                                ? Collections.singletonList(new TextImpl(text, from, to))
+                                : Collections.<Node>emptyList();
+                        break;
                     }
+                    break;
+                }
 
-                    final List<? extends Node> tokenEntries;
-                    final Grammar inside = pattern.inside();
-                    final boolean hasInside = inside != null;
-                    if (hasInside) {
-                        tokenEntries = tokenize(match, inside);
+                case Frame.STATE_SYNTAX: {
+
+                    final int from = frame.from;
+                    final int to = frame.to;
+                    final int strEnd = frame.strEnd;
+                    final List<? extends Node> children = frame.children;
+                    frame.children = null;
+
+                    // inside grammar is not applied beyond max nesting depth
+                    final boolean tokenized = grammar.inside(pattern) != null && frame.depth < maxNestingDepth;
+                    final Syntax syntax;
+                    if (tokenized && isLazy(frame.mode)) {
+                        syntax = new LazySyntax(
+                                this,
+                                grammar.types[t],
+                                grammar.aliases[pattern],
+                                text,
+                                from,
+                                to,
+                                grammar.greedy(pattern),
+                                context.inside(grammar, pattern),
+                                frame.depth + 1);
                     } else {
-                        tokenEntries = Collections.singletonList(new TextImpl(match));
+                        syntax = new SyntaxImpl(
+                                grammar.types[t],
+                                children,
+                                grammar.aliases[pattern],
+                                text,
+                                from,
+                                to,
+                                grammar.greedy(pattern),
+                                tokenized);
                     }
-
-                    entries.add(i2++, new SyntaxImpl(
-                            token.name(),
-                            tokenEntries,
-                            pattern.alias(),
-                            match,
-                            greedy,
-                            hasInside
-                    ));
+                    current = entries.addAfter(frame.insertAfter, syntax);
+                    frame.insertAfter = null;
 
                     // important thing here (famous off-by one error) to check against full length (not `length - 1`)
-                    if (to < str.length()) {
-                        final String after = str.substring(to);
-                        entries.add(i2, new TextImpl(after));
+                    if (to < strEnd) {
+                        entries.addAfter(current, new TextImpl(text, to, strEnd));
                     }
 
-                    if (deleteCount != 1) {
-                        matchGrammar(text, entries, grammar, i, position, true, token);
+                    state = Frame.STATE_NEXT_ENTRY;
+
+                    if (frame.deleteCount != 1) {
+                        frame.save(state, t, pattern, position, current);
+                        return new Frame(
+                                frame,
+                                grammar,
+                                entries,
+                                textStart,
+                                textEnd,
+                                current.prev,
+                                position,
+                                true,
+                                grammar.tokens[t],
+                                frame.depth,
+                                frame.mode);
                     }
+                    break;
+                }
 
-                    if (oneShot) {
-                        break;
+                case Frame.STATE_NEXT_ENTRY: {
+                    if (frame.oneShot) {
+                        state = Frame.STATE_NEXT_PATTERN;
+                    } else {
+                        position += current.node.textLength();
+                        current = current.next;
+                        state = Frame.STATE_ENTRY;
                     }
+                    break;
                 }
+
+                case Frame.STATE_NEXT_PATTERN: {
+                    pattern += 1;
+                    state = Frame.STATE_PATTERN;
+                    break;
+                }
+
+                default:
+                    throw new IllegalStateException("Unexpected state: " + state);
             }
         }
     }
 
+    @Nullable
+    private static Frame finish(@NotNull Frame frame) {
+        final Frame parent = frame.parent;
+        if (parent != null
+                && parent.entries != frame.entries) {
+            // inside grammar, nodes are children of a syntax node of the parent
+            parent.children = parent.mode != MATCH_LOG
+                    ? frame.entries.toList()
+                    : Collections.<Node>emptyList();
+        }
+        return parent;
+    }
+
+    private static boolean isLazy(int mode) {
+        return mode == MATCH_LAZY || mode == MATCH_EMIT;
+    }
+
     private static boolean isSyntaxNode(@NotNull Node node) {
         return node.isSyntax();
     }
 
-    private static boolean isGreedyNode(@NotNull Node node) {
-        return node.isSyntax() && ((Syntax) node).greedy();
+    // `node` is null for the list head
+    private static boolean isGreedyNode(@Nullable Node node) {
+        return node != null && node.isSyntax() && ((Syntax) node).greedy();
+    }
+
+    // state of a grammar that is being matched against entries (a frame of recursive prism-js `matchGrammar`)
+    private static final class Frame {
+
+        static final int STATE_TOKEN = 0;
+        static final int STATE_PATTERN = 1;
+        static final int STATE_ENTRY = 2;
+        // match is found, waiting for children (nodes of inside grammar)
+        static final int STATE_SYNTAX = 3;
+        // syntax node is added (and greedy rematch is finished)
+        static final int STATE_NEXT_ENTRY = 4;
+        static final int STATE_NEXT_PATTERN = 5;
+
+        @Nullable
+        final Frame parent;
+        final CompiledGrammar grammar;
+        // entries of the parent (greedy rematch) or own entries (inside grammar)
+        final NodeLinkedList entries;
+        final int textStart;
+        final int textEnd;
+        final NodeLinkedList.Entry anchor;
+        final int startPosition;
+        final boolean oneShot;
+        @Nullable
+        final Token target;
+        // number of inside grammars applied
+        final int depth;
+        // how content of matched tokens is created (MATCH_* constants)
+        final int mode;
+
+        int state = STATE_TOKEN;
+        int t;
+        int pattern;
+        int position;
+        NodeLinkedList.Entry current;
+
+        // current match
+        NodeLinkedList.Entry insertAfter;
+        int from;
+        int to;
+        int strEnd;
+        int deleteCount;
+        List<? extends Node> children;
+
+        Frame(
+                @Nullable Frame parent,
+                @NotNull CompiledGrammar grammar,
+                @NotNull NodeLinkedList entries,
+                int textStart,
+                int textEnd,
+                @NotNull NodeLinkedList.Entry anchor,
+                int startPosition,
+                boolean oneShot,
+                @Nullable Token target,
+                int depth,
+                int mode) {
+            this.parent = parent;
+            this.grammar = grammar;
+            this.entries = entries;
+            this.textStart = textStart;
+            this.textEnd = textEnd;
+            this.anchor = anchor;
+            this.startPosition = startPosition;
+            this.oneShot = oneShot;
+            this.target = target;
+            this.depth = depth;
+            this.mode = mode;
+        }
+
+        void save(int state, int t, int pattern, int position, @Nullable NodeLinkedList.Entry current) {
+            this.state = state;
+            this.t = t;
+            this.pattern = pattern;
+            this.position = position;
+            this.current = current;
+        }
     }
 }
@@ -0,0 +1,157 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Context of a tokenize call that is profiled with a {@link TokenizeProfiler}. Searches are timed
+ * and matchers read the text through a wrapper that counts read chars. Statistics are added to
+ * the profiler by {@link #finish()}.
+ */
+class ProfilingMatchContext extends MatchContext {
+
+    // name of an anonymous inside grammar
+    private static final String INSIDE = "inside";
+
+    private final TokenizeProfiler profiler;
+    private final CountingText input;
+
+    // entries of this call by compiled grammar and pattern index
+    private final Map<CompiledGrammar, TokenizeProfiler.Entry[]> entries = new IdentityHashMap<>(3);
+    private final List<TokenizeProfiler.Entry> list = new ArrayList<>();
+
+    // reported names of inside grammars
+    private final Map<CompiledGrammar, String> grammarNames = new IdentityHashMap<>(3);
+
+    ProfilingMatchContext(@NotNull CharSequence text, @NotNull TokenizeProfiler profiler) {
+        this(text, new CountingText(text), profiler);
+    }
+
+    private ProfilingMatchContext(
+            @NotNull CharSequence text,
+            @NotNull CountingText input,
+            @NotNull TokenizeProfiler profiler) {
+        super(text, input);
+        this.profiler = profiler;
+        this.input = input;
+    }
+
+    @Override
+    boolean search(@NotNull CompiledGrammar grammar, int pattern, int start, int end) {
+
+        final TokenizeProfiler.Entry entry = entry(grammar, pattern);
+        final long chars = input.chars;
+        final long started = System.nanoTime();
+
+        final boolean found = super.search(grammar, pattern, start, end);
+
+        entry.nanos += System.nanoTime() - started;
+        entry.chars += input.chars - chars;
+        entry.searches += 1;
+        if (found) {
+            entry.hits += 1;
+        }
+
+        return found;
+    }
+
+    @NotNull
+    @Override
+    CompiledGrammar inside(@NotNull CompiledGrammar grammar, int pattern) {
+        final CompiledGrammar inside = super.inside(grammar, pattern);
+        if (!grammarNames.containsKey(inside)) {
+            final String name = inside.grammar.name();
+            grammarNames.put(inside, INSIDE.equals(name)
+                    ? grammarName(grammar) + '/' + name
+                    : name);
+        }
+        return inside;
+    }
+
+    @NotNull
+    @Override
+    CharSequence input(@NotNull CharSequence text) {
+        input.text = text;
+        return input;
+    }
+
+    @Override
+    void finish() {
+        profiler.add(list);
+    }
+
+    @NotNull
+    private TokenizeProfiler.Entry entry(@NotNull CompiledGrammar grammar, int pattern) {
+
+        TokenizeProfiler.Entry[] array = entries.get(grammar);
+        if (array == null) {
+            array = new TokenizeProfiler.Entry[grammar.patternCount];
+            entries.put(grammar, array);
+        }
+
+        TokenizeProfiler.Entry entry = array[pattern];
+        if (entry == null) {
+            int t = 0;
+            while (grammar.tokenPatterns[t + 1] <= pattern) {
+                t += 1;
+            }
+            final Prism4j.Token token = grammar.tokens[t];
+            entry = new TokenizeProfiler.Entry(
+                    new TokenizeProfiler.Key(
+                            grammar.grammar,
+                            token,
+                            token.patterns().get(pattern - grammar.tokenPatterns[t])),
+                    grammarName(grammar));
+            array[pattern] = entry;
+            list.add(entry);
+        }
+        return entry;
+    }
+
+    @NotNull
+    private String grammarName(@NotNull CompiledGrammar grammar) {
+        final String name = grammarNames.get(grammar);
+        return name != null
+                ? name
+                : grammar.grammar.name();
+    }
+
+    private static class CountingText implements CharSequence {
+
+        // changed when context is reset
+        CharSequence text;
+
+        long chars;
+
+        CountingText(@NotNull CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            chars += 1;
+            return text.charAt(index);
+        }
+
+        @NotNull
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Result of {@link Prism4j#tokenizeProgressive(String, Prism4j.Grammar, Executor)}.
+ * {@link #coarse()} nodes are available right away: only top-level tokens are matched and content
+ * of a token with an inside grammar is a single text node ({@link Prism4j.Syntax#tokenized()}
+ * is false). {@link #refined()} completes with nodes that are equal to what
+ * {@link Prism4j#tokenize(String, Prism4j.Grammar)} returns, when inside grammars are applied
+ * by the executor. Refinement stops if the future is cancelled.
+ */
+public class ProgressiveResult {
+
+    @NotNull
+    static ProgressiveResult create(@NotNull List<Prism4j.Node> nodes, @NotNull Executor executor) {
+
+        final List<Prism4j.Node> coarse = new ArrayList<>(nodes.size());
+        for (Prism4j.Node node : nodes) {
+            coarse.add(node instanceof LazySyntax
+                    ? coarse((LazySyntax) node)
+                    : node);
+        }
+
+        final CompletableFuture<List<Prism4j.Node>> refined = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                if (refine(nodes, refined)) {
+                    refined.complete(nodes);
+                }
+            } catch (Throwable t) {
+                refined.completeExceptionally(t);
+            }
+        });
+
+        return new ProgressiveResult(Collections.unmodifiableList(coarse), refined);
+    }
+
+    private final List<Prism4j.Node> coarse;
+    private final CompletableFuture<List<Prism4j.Node>> refined;
+
+    private ProgressiveResult(
+            @NotNull List<Prism4j.Node> coarse,
+            @NotNull CompletableFuture<List<Prism4j.Node>> refined) {
+        this.coarse = coarse;
+        this.refined = refined;
+    }
+
+    /**
+     * @return top-level nodes, content of tokens with an inside grammar is not tokenized
+     */
+    @NotNull
+    public List<Prism4j.Node> coarse() {
+        return coarse;
+    }
+
+    /**
+     * @return future of completely tokenized nodes (a new list, coarse nodes are not modified)
+     */
+    @NotNull
+    public CompletableFuture<List<Prism4j.Node>> refined() {
+        return refined;
+    }
+
+    @Override
+    public String toString() {
+        return "ProgressiveResult{" +
+                "coarse.size=" + coarse.size() +
+                ", refined=" + refined.isDone() +
+                '}';
+    }
+
+    // same node without children (LazySyntax would tokenize them on access)
+    @NotNull
+    private static Prism4j.Node coarse(@NotNull LazySyntax syntax) {
+        return new SyntaxImpl(
+                syntax.type(),
+                Collections.singletonList(new TextImpl(syntax.source(), syntax.start(), syntax.end())),
+                syntax.alias(),
+                syntax.source(),
+                syntax.start(),
+                syntax.end(),
+                syntax.greedy(),
+                false);
+    }
+
+    // tokenizes children of all lazy nodes (without recursion), returns false if cancelled
+    private static boolean refine(
+            @NotNull List<Prism4j.Node> nodes,
+            @NotNull CompletableFuture<?> future) {
+        final ArrayDeque<List<? extends Prism4j.Node>> stack = new ArrayDeque<>();
+        stack.push(nodes);
+        while (!stack.isEmpty()) {
+            for (Prism4j.Node node : stack.pop()) {
+                if (node instanceof LazySyntax) {
+                    if (future.isDone()) {
+                        return false;
+                    }
+                    stack.push(((LazySyntax) node).children());
+                }
+            }
+        }
+        return true;
+    }
+}
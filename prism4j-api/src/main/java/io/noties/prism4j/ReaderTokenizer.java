@@ -0,0 +1,178 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tokenizes input of a {@link Reader} in a window of a fixed length. Each window is tokenized
+ * and nodes before a cut are sent to the sink, then the rest of the window is tokenized again
+ * with the following input. A cut is never inside a token or a word (so a word that is split
+ * by the cut is not matched as a keyword). It is the last line start in the first half of the window
+ * that is not inside a token (the second half is a lookahead, so a token that starts before the cut
+ * and is shorter than it is found whole). If there is no such line start, it is the last position in
+ * the first half after a whitespace or at a bound of a token, then the first such position after
+ * the middle. Only a window without any of them (a single word or token) is cut at the middle
+ * (or after a token that starts the window).
+ * <p>
+ * Result is the same as of {@link Prism4j#tokenize(CharSequence, Prism4j.Grammar, TokenSink)} of
+ * the whole input unless a token is longer than the lookahead (or a pattern depends on text
+ * before a cut, for example, a lookbehind).
+ *
+ * @see Prism4j#tokenize(Reader, Prism4j.Grammar, TokenSink, int)
+ */
+abstract class ReaderTokenizer {
+
+    static final int DEFAULT_WINDOW_LENGTH = 64 * 1024;
+
+    static void tokenize(
+            @NotNull Prism4j prism4j,
+            @NotNull Reader reader,
+            @NotNull Prism4j.Grammar grammar,
+            @NotNull TokenSink sink,
+            int windowLength) throws IOException {
+
+        if (windowLength < 2) {
+            throw new IllegalArgumentException("windowLength must be at least 2: " + windowLength);
+        }
+
+        final char[] buffer = new char[windowLength];
+        final ArrayDeque<Iterator<? extends Prism4j.Node>> stack = new ArrayDeque<>();
+
+        int length = 0;
+        boolean eof = false;
+
+        while (true) {
+
+            while (!eof && length < windowLength) {
+                final int read = reader.read(buffer, length, windowLength - length);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    length += read;
+                }
+            }
+
+            if (length == 0) {
+                return;
+            }
+
+            final String text = new String(buffer, 0, length);
+
+            // inside grammars are applied only to the emitted nodes (when they are emitted)
+            final MatchContext context = prism4j.context(text);
+            final List<Prism4j.Node> nodes = prism4j.match(context, 0, length, context.compile(grammar), 0, Prism4j.MATCH_EMIT).toList();
+
+            final int cut = eof
+                    ? length
+                    : cut(text, nodes, length - (windowLength >> 1));
+
+            sink.onChunk(text.substring(0, cut));
+
+            int position = 0;
+            for (Prism4j.Node node : nodes) {
+                if (position >= cut) {
+                    break;
+                }
+                if (position + node.textLength() <= cut) {
+                    prism4j.emit(context, node, position, sink, stack);
+                    position += node.textLength();
+                } else {
+                    // cut is inside a text node
+                    sink.onText(position, cut);
+                    position = cut;
+                }
+            }
+
+            context.finish();
+
+            if (eof) {
+                return;
+            }
+
+            length -= cut;
+            System.arraycopy(buffer, cut, buffer, 0, length);
+        }
+    }
+
+    // position (not inside a syntax node) to cut the window at: the last line start up to the limit,
+    // the last position after a whitespace or at a bound of a syntax node up to the limit, the first
+    // such position after the limit, or the limit itself (a word or a token is cut)
+    static int cut(@NotNull String text, @NotNull List<Prism4j.Node> nodes, int limit) {
+
+        int lineStart = 0;
+        int boundary = 0;
+        int next = 0;
+
+        int position = 0;
+
+        for (Prism4j.Node node : nodes) {
+
+            final int end = position + node.textLength();
+
+            if (node.isSyntax()) {
+                if (position > 0) {
+                    if (position <= limit) {
+                        boundary = position;
+                    } else {
+                        next = position;
+                        break;
+                    }
+                }
+                if (end <= limit) {
+                    boundary = end;
+                    if (text.charAt(end - 1) == '\n') {
+                        lineStart = end;
+                    }
+                } else {
+                    next = end;
+                    break;
+                }
+            } else {
+                for (int i = position; i < end; i++) {
+                    final char c = text.charAt(i);
+                    if (Character.isWhitespace(c)) {
+                        if (i < limit) {
+                            boundary = i + 1;
+                            if (c == '\n') {
+                                lineStart = i + 1;
+                            }
+                        } else {
+                            next = i + 1;
+                            break;
+                        }
+                    }
+                }
+                if (next > 0) {
+                    break;
+                }
+            }
+
+            position = end;
+        }
+
+        if (lineStart > 0) {
+            return lineStart;
+        }
+
+        if (boundary > 0) {
+            return boundary;
+        }
+
+        if (next > 0) {
+            return next;
+        }
+
+        // inside of a word (a surrogate pair is not split)
+        return limit > 1 && Character.isLowSurrogate(text.charAt(limit))
+                ? limit - 1
+                : limit;
+    }
+
+    private ReaderTokenizer() {
+    }
+}
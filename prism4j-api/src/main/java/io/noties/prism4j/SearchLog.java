@@ -0,0 +1,180 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Results of pattern searches performed during a tokenize call (see
+ * {@link MatchContext#search(CompiledGrammar, int, int, int)}), keyed by grammar, pattern index and
+ * start of the searched region. Each record also holds region end and the end of the text that
+ * search result depends on (every char that was read by the matcher, or the whole region if nothing
+ * was found), so a result can be reused when that part of the text was not changed.
+ * <p>
+ * Open addressing (linear probing) table over primitive arrays. Not thread-safe while filled.
+ *
+ * @see IncrementalMatchContext
+ */
+class SearchLog {
+
+    static final int NOT_FOUND = -1;
+
+    // grammars are identified by small ids that are shared between consecutive logs
+    private final Map<Prism4j.Grammar, Integer> grammarIds;
+
+    private int size;
+
+    // index + 1 of the record, 0 is an empty slot
+    private int[] slots;
+
+    private long[] keys;
+    private int[] ends;
+    private int[] matchStarts;
+    private int[] matchEnds;
+    private int[] depends;
+
+    SearchLog() {
+        this(new IdentityHashMap<>(), 32);
+    }
+
+    // a log after an edit is expected to have about the same number of records
+    SearchLog(@NotNull SearchLog previous) {
+        this(new IdentityHashMap<>(previous.grammarIds), Math.max(32, previous.size + (previous.size >> 3)));
+    }
+
+    private SearchLog(@NotNull Map<Prism4j.Grammar, Integer> grammarIds, int capacity) {
+        this.grammarIds = grammarIds;
+        this.slots = new int[Integer.highestOneBit(capacity) << 2];
+        this.keys = new long[capacity];
+        this.ends = new int[capacity];
+        this.matchStarts = new int[capacity];
+        this.matchEnds = new int[capacity];
+        this.depends = new int[capacity];
+    }
+
+    int grammarId(@NotNull Prism4j.Grammar grammar) {
+        Integer id = grammarIds.get(grammar);
+        if (id == null) {
+            id = grammarIds.size();
+            grammarIds.put(grammar, id);
+        }
+        return id;
+    }
+
+    static long key(int grammarId, int pattern, int start) {
+        return ((long) ((grammarId << 16) | pattern) << 32) | start;
+    }
+
+    /**
+     * Adds all records of other log (grammar ids are mapped to ids of this log)
+     */
+    void addAll(@NotNull SearchLog other) {
+
+        final int[] ids = new int[other.grammarIds.size()];
+        for (Map.Entry<Prism4j.Grammar, Integer> entry : other.grammarIds.entrySet()) {
+            ids[entry.getValue()] = grammarId(entry.getKey());
+        }
+
+        for (int i = 0; i < other.size; i++) {
+            final long key = other.keys[i];
+            add(
+                    key(ids[(int) (key >>> 48)], (int) (key >>> 32) & 0xFFFF, (int) key),
+                    other.ends[i],
+                    other.matchStarts[i],
+                    other.matchEnds[i],
+                    other.depends[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return index of the record or -1 if there is none
+     */
+    int find(long key) {
+        final int mask = slots.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            final int slot = slots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            if (keys[slot - 1] == key) {
+                return slot - 1;
+            }
+        }
+    }
+
+    int end(int index) {
+        return ends[index];
+    }
+
+    int matchStart(int index) {
+        return matchStarts[index];
+    }
+
+    int matchEnd(int index) {
+        return matchEnds[index];
+    }
+
+    int depend(int index) {
+        return depends[index];
+    }
+
+    // the same region can be searched again (when re-matching after a greedy match), such records
+    // are not merged: each of them is valid for its own region, so any of them can be found
+    void add(long key, int end, int matchStart, int matchEnd, int depend) {
+
+        if (size == keys.length) {
+            final int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            matchStarts = Arrays.copyOf(matchStarts, capacity);
+            matchEnds = Arrays.copyOf(matchEnds, capacity);
+            depends = Arrays.copyOf(depends, capacity);
+        }
+
+        final int index = size++;
+        keys[index] = key;
+        ends[index] = end;
+        matchStarts[index] = matchStart;
+        matchEnds[index] = matchEnd;
+        depends[index] = depend;
+
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            insert(index);
+        }
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            insert(i);
+        }
+    }
+
+    private void insert(int index) {
+        final int mask = slots.length - 1;
+        int i = hash(keys[index]) & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = index + 1;
+    }
+
+    // murmur3 finalizer, keys differ mostly in low bits (region start)
+    private static int hash(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -10,10 +10,15 @@ public class SyntaxImpl implements Prism4j.Syntax {
     private final String type;
     private final List<? extends Prism4j.Node> children;
     private final String alias;
-    private final String matchedString;
+    private final CharSequence source;
+    private final int start;
+    private final int end;
     private final boolean greedy;
     private final boolean tokenized;
 
+    // lazily created from source (racy single-check is fine as String is immutable)
+    private String matchedString;
+
     public SyntaxImpl(
             @NotNull String type,
             @NotNull List<? extends Prism4j.Node> children,
@@ -24,14 +29,44 @@ public class SyntaxImpl implements Prism4j.Syntax {
         this.type = type;
         this.children = children;
         this.alias = alias;
+        this.source = matchedString;
+        this.start = 0;
+        this.end = matchedString.length();
+        this.greedy = greedy;
+        this.tokenized = tokenized;
         this.matchedString = matchedString;
+    }
+
+    /**
+     * Creates a syntax node that references a part of the source (without copying it). Actual
+     * {@link #matchedString()} will be created on first access
+     *
+     * @param source that was tokenized
+     * @param start  of this node in source (inclusive)
+     * @param end    of this node in source (exclusive)
+     */
+    public SyntaxImpl(
+            @NotNull String type,
+            @NotNull List<? extends Prism4j.Node> children,
+            @Nullable String alias,
+            @NotNull CharSequence source,
+            int start,
+            int end,
+            boolean greedy,
+            boolean tokenized) {
+        this.type = type;
+        this.children = children;
+        this.alias = alias;
+        this.source = source;
+        this.start = start;
+        this.end = end;
         this.greedy = greedy;
         this.tokenized = tokenized;
     }
 
     @Override
     public int textLength() {
-        return matchedString.length();
+        return end - start;
     }
 
     @Override
@@ -60,9 +95,38 @@ public class SyntaxImpl implements Prism4j.Syntax {
     @NotNull
     @Override
     public String matchedString() {
+        String matchedString = this.matchedString;
+        if (matchedString == null) {
+            matchedString = source.subSequence(start, end).toString();
+            this.matchedString = matchedString;
+        }
         return matchedString;
     }
 
+    /**
+     * @return source that contains this node
+     * @see #start()
+     * @see #end()
+     */
+    @NotNull
+    public CharSequence source() {
+        return source;
+    }
+
+    /**
+     * @return start of this node in {@link #source()} (inclusive)
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * @return end of this node in {@link #source()} (exclusive)
+     */
+    public int end() {
+        return end;
+    }
+
     @Override
     public boolean greedy() {
         return greedy;
@@ -77,9 +141,9 @@ public class SyntaxImpl implements Prism4j.Syntax {
     public String toString() {
         return "SyntaxImpl{" +
                 "type='" + type + '\'' +
-                ", children=" + children +
+                ", children=" + children() +
                 ", alias='" + alias + '\'' +
-                ", matchedString='" + matchedString + '\'' +
+                ", matchedString='" + matchedString() + '\'' +
                 ", greedy=" + greedy +
                 ", tokenized=" + tokenized +
                 '}';
@@ -4,15 +4,37 @@ import org.jetbrains.annotations.NotNull;
 
 public class TextImpl implements Prism4j.Text {
 
-    private final String literal;
+    private final CharSequence source;
+    private final int start;
+    private final int end;
+
+    // lazily created from source (racy single-check is fine as String is immutable)
+    private String literal;
 
     public TextImpl(@NotNull String literal) {
+        this.source = literal;
+        this.start = 0;
+        this.end = literal.length();
         this.literal = literal;
     }
 
+    /**
+     * Creates a text node that references a part of the source (without copying it). Actual
+     * {@link #literal()} will be created on first access
+     *
+     * @param source that was tokenized
+     * @param start  of this node in source (inclusive)
+     * @param end    of this node in source (exclusive)
+     */
+    public TextImpl(@NotNull CharSequence source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
     @Override
     public int textLength() {
-        return literal.length();
+        return end - start;
     }
 
     @Override
@@ -23,13 +45,42 @@ public class TextImpl implements Prism4j.Text {
     @NotNull
     @Override
     public String literal() {
+        String literal = this.literal;
+        if (literal == null) {
+            literal = source.subSequence(start, end).toString();
+            this.literal = literal;
+        }
         return literal;
     }
 
+    /**
+     * @return source that contains this node
+     * @see #start()
+     * @see #end()
+     */
+    @NotNull
+    public CharSequence source() {
+        return source;
+    }
+
+    /**
+     * @return start of this node in {@link #source()} (inclusive)
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * @return end of this node in {@link #source()} (exclusive)
+     */
+    public int end() {
+        return end;
+    }
+
     @Override
     public String toString() {
         return "TextImpl{" +
-                "literal='" + literal + '\'' +
+                "literal='" + literal() + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,34 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Receives tokenization result as a sequence of events (in document order) instead
+ * of a tree of {@link Prism4j.Node}s. Positions are absolute in the tokenized text (or relative to
+ * the current chunk, see {@link #onChunk(CharSequence)}), so a sink can write the source directly
+ * (for example, {@code appendable.append(text, start, end)}).
+ * <p>
+ * Each {@link #onEnterSyntax(String, String, int, int)} is followed by events for its children
+ * and then by a matching {@link #onExitSyntax()}.
+ *
+ * @see Prism4j#tokenize(CharSequence, Prism4j.Grammar, TokenSink)
+ * @see Prism4j#tokenize(java.io.Reader, Prism4j.Grammar, TokenSink)
+ */
+public interface TokenSink {
+
+    /**
+     * Called only when input is read from a {@link java.io.Reader}, before events of each chunk
+     * of the input. Positions of the following events are in this chunk
+     *
+     * @param chunk of the input (chunks follow each other without gaps)
+     */
+    default void onChunk(@NotNull CharSequence chunk) {
+    }
+
+    void onText(int start, int end);
+
+    void onEnterSyntax(@NotNull String type, @Nullable String alias, int start, int end);
+
+    void onExitSyntax();
+}
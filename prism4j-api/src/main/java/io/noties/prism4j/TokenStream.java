@@ -0,0 +1,256 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compact (struct-of-arrays) representation of tokenization result. Contains an entry for each
+ * {@link Prism4j.Syntax} node (in document order, parent before its children) with its
+ * start and end in the source, interned type and alias and nesting depth (`0` for top-level
+ * syntax nodes). Text is not stored explicitly: it is everything that is not covered by an entry.
+ * <p>
+ * Type and alias ids are valid only for the stream that has produced them, use {@link #name(int)}
+ * to obtain actual name.
+ *
+ * @see Prism4j#tokenizeToStream(CharSequence, Prism4j.Grammar)
+ * @see #create(CharSequence, List)
+ */
+public class TokenStream {
+
+    /**
+     * Returned by {@link #aliasId(int)} when a syntax has no alias
+     */
+    public static final int NO_ALIAS = -1;
+
+    /**
+     * Creates a stream from nodes (as returned by {@link Prism4j#tokenize(String, Prism4j.Grammar)}).
+     * Node positions are calculated from {@link Prism4j.Node#textLength()}, so any implementation
+     * of nodes is supported.
+     *
+     * @param source that was tokenized
+     * @param nodes  tokenization result
+     */
+    @NotNull
+    public static TokenStream create(@NotNull CharSequence source, @NotNull List<? extends Prism4j.Node> nodes) {
+        final Builder builder = new Builder(source);
+        builder.add(nodes);
+        return builder.build();
+    }
+
+    private final CharSequence source;
+    private final int size;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] types;
+    private final int[] aliases;
+    private final int[] depths;
+    private final String[] names;
+
+    private TokenStream(
+            @NotNull CharSequence source,
+            int size,
+            @NotNull int[] starts,
+            @NotNull int[] ends,
+            @NotNull int[] types,
+            @NotNull int[] aliases,
+            @NotNull int[] depths,
+            @NotNull String[] names) {
+        this.source = source;
+        this.size = size;
+        this.starts = starts;
+        this.ends = ends;
+        this.types = types;
+        this.aliases = aliases;
+        this.depths = depths;
+        this.names = names;
+    }
+
+    @NotNull
+    public CharSequence source() {
+        return source;
+    }
+
+    /**
+     * @return number of entries (syntax nodes) in this stream
+     */
+    public int size() {
+        return size;
+    }
+
+    public int start(int index) {
+        return starts[checkIndex(index)];
+    }
+
+    public int end(int index) {
+        return ends[checkIndex(index)];
+    }
+
+    public int typeId(int index) {
+        return types[checkIndex(index)];
+    }
+
+    /**
+     * @return alias id or {@link #NO_ALIAS}
+     */
+    public int aliasId(int index) {
+        return aliases[checkIndex(index)];
+    }
+
+    public int depth(int index) {
+        return depths[checkIndex(index)];
+    }
+
+    @NotNull
+    public String type(int index) {
+        return names[typeId(index)];
+    }
+
+    @Nullable
+    public String alias(int index) {
+        final int alias = aliasId(index);
+        return alias != NO_ALIAS
+                ? names[alias]
+                : null;
+    }
+
+    /**
+     * @return number of distinct type and alias names in this stream (ids are in range {@code [0, nameCount)})
+     */
+    public int nameCount() {
+        return names.length;
+    }
+
+    @NotNull
+    public String name(int id) {
+        return names[id];
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("TokenStream{size=").append(size).append(", entries=[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append('{')
+                    .append(starts[i]).append(',')
+                    .append(ends[i]).append(',')
+                    .append(names[types[i]]).append(',')
+                    .append(aliases[i] != NO_ALIAS ? names[aliases[i]] : null).append(',')
+                    .append(depths[i])
+                    .append('}');
+        }
+        return builder.append("]}").toString();
+    }
+
+    static class Builder implements TokenSink {
+
+        private final CharSequence source;
+        private final Names names = new Names();
+
+        private int size;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int[] types = new int[16];
+        private int[] aliases = new int[16];
+        private int[] depths = new int[16];
+
+        private int depth;
+
+        Builder(@NotNull CharSequence source) {
+            this.source = source;
+        }
+
+        void add(int start, int end, @NotNull String type, @Nullable String alias, int depth) {
+            if (size == starts.length) {
+                final int capacity = size * 2;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                types = Arrays.copyOf(types, capacity);
+                aliases = Arrays.copyOf(aliases, capacity);
+                depths = Arrays.copyOf(depths, capacity);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            types[size] = names.id(type);
+            aliases[size] = alias != null ? names.id(alias) : NO_ALIAS;
+            depths[size] = depth;
+            size += 1;
+        }
+
+        @Override
+        public void onText(int start, int end) {
+            // text is everything that is not covered by a syntax
+        }
+
+        @Override
+        public void onEnterSyntax(@NotNull String type, @Nullable String alias, int start, int end) {
+            add(start, end, type, alias, depth);
+            depth += 1;
+        }
+
+        @Override
+        public void onExitSyntax() {
+            depth -= 1;
+        }
+
+        // adds syntax nodes in document order (without recursion, nesting can be deep)
+        void add(@NotNull List<? extends Prism4j.Node> nodes) {
+
+            // children left to add of entered syntax nodes and ends of these nodes (by depth)
+            final ArrayDeque<Iterator<? extends Prism4j.Node>> stack = new ArrayDeque<>();
+            int[] ends = new int[16];
+
+            stack.push(nodes.iterator());
+            int position = 0;
+
+            while (!stack.isEmpty()) {
+
+                final Iterator<? extends Prism4j.Node> iterator = stack.peek();
+                if (!iterator.hasNext()) {
+                    stack.pop();
+                    if (!stack.isEmpty()) {
+                        position = ends[stack.size()];
+                    }
+                    continue;
+                }
+
+                final Prism4j.Node node = iterator.next();
+                final int end = position + node.textLength();
+                if (node.isSyntax()) {
+                    final Prism4j.Syntax syntax = (Prism4j.Syntax) node;
+                    final int depth = stack.size();
+                    add(position, end, syntax.type(), syntax.alias(), depth - 1);
+                    if (depth == ends.length) {
+                        ends = Arrays.copyOf(ends, depth * 2);
+                    }
+                    ends[depth] = end;
+                    stack.push(syntax.children().iterator());
+                } else {
+                    position = end;
+                }
+            }
+        }
+
+        @NotNull
+        TokenStream build() {
+            final String[] names = new String[this.names.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = this.names.name(i);
+            }
+            return new TokenStream(source, size, starts, ends, types, aliases, depths, names);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits a single {@link Prism4j#tokenize(String, Prism4j.Grammar, TokenizeBudget)} call, either
+ * by time or by steps (every char that is read by a pattern search is a step) or by both.
+ * A step budget gives the same result for the same input on any machine, a time budget
+ * bounds latency.
+ */
+public class TokenizeBudget {
+
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    /**
+     * @return budget that runs out after specified time since the start of a tokenize call
+     */
+    @NotNull
+    public static TokenizeBudget timeout(long timeout, @NotNull TimeUnit unit) {
+        return new TokenizeBudget(nanos(timeout, unit), UNLIMITED);
+    }
+
+    /**
+     * @return budget that runs out after pattern searches have read specified number of chars
+     */
+    @NotNull
+    public static TokenizeBudget steps(long steps) {
+        return new TokenizeBudget(UNLIMITED, checkSteps(steps));
+    }
+
+    private final long timeoutNanos;
+    private final long steps;
+
+    private TokenizeBudget(long timeoutNanos, long steps) {
+        this.timeoutNanos = timeoutNanos;
+        this.steps = steps;
+    }
+
+    /**
+     * @return budget with the same number of steps that also runs out after specified time
+     */
+    @NotNull
+    public TokenizeBudget withTimeout(long timeout, @NotNull TimeUnit unit) {
+        return new TokenizeBudget(nanos(timeout, unit), steps);
+    }
+
+    /**
+     * @return budget with the same timeout that also runs out after specified number of steps
+     */
+    @NotNull
+    public TokenizeBudget withSteps(long steps) {
+        return new TokenizeBudget(timeoutNanos, checkSteps(steps));
+    }
+
+    boolean hasTimeout() {
+        return timeoutNanos != UNLIMITED;
+    }
+
+    long timeoutNanos() {
+        return timeoutNanos;
+    }
+
+    long steps() {
+        return steps;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenizeBudget{" +
+                "timeoutNanos=" + (hasTimeout() ? String.valueOf(timeoutNanos) : "unlimited") +
+                ", steps=" + (steps != UNLIMITED ? String.valueOf(steps) : "unlimited") +
+                '}';
+    }
+
+    private static long nanos(long timeout, @NotNull TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout cannot be negative: " + timeout);
+        }
+        return unit.toNanos(timeout);
+    }
+
+    private static long checkSteps(long steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("Steps cannot be negative: " + steps);
+        }
+        return steps;
+    }
+}
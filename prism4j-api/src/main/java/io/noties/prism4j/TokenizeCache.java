@@ -0,0 +1,258 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Bounded LRU cache of {@link Prism4j#tokenize(String, Prism4j.Grammar)} results. Results are keyed
+ * by grammar identity and text (hash and length are compared first, then the text itself, so hash
+ * collisions never return a wrong result).
+ * <p>
+ * Cached results are immutable (all lists are unmodifiable) and can be shared between threads.
+ * Apart from that they are equal to what {@link Prism4j#tokenize(String, Prism4j.Grammar)} returns.
+ * <p>
+ * Cache is bounded by number of entries and by total weight (length of cached texts). Results for
+ * a text that is longer than the max weight are not cached and are returned as
+ * {@link Prism4j#tokenize(String, Prism4j.Grammar)} returns them (not copied). Please note that
+ * cache is not aware of grammar modifications, so cache results only for grammars that are no
+ * longer modified (for example, obtained via {@link GrammarUtils#freeze(Prism4j.Grammar)}).
+ * <p>
+ * This class is thread-safe. Tokenization itself is done outside of the lock, so the same
+ * text can be tokenized by multiple threads simultaneously on a miss (the first stored result wins).
+ *
+ * @see #create(Prism4j, int, int)
+ */
+public class TokenizeCache {
+
+    /**
+     * @param prism4j    used to tokenize on a cache miss
+     * @param maxEntries maximum number of cached results
+     * @param maxWeight  maximum total length of cached texts
+     */
+    @NotNull
+    public static TokenizeCache create(@NotNull Prism4j prism4j, int maxEntries, int maxWeight) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        return new TokenizeCache(prism4j, maxEntries, maxWeight);
+    }
+
+    private final Prism4j prism4j;
+    private final int maxEntries;
+    private final int maxWeight;
+
+    // access-ordered, eldest entry is least recently used, guarded by `this`
+    private final LinkedHashMap<Key, List<Prism4j.Node>> map = new LinkedHashMap<>(16, 0.75F, true);
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    private TokenizeCache(@NotNull Prism4j prism4j, int maxEntries, int maxWeight) {
+        this.prism4j = prism4j;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @return tokenization result, either cached or obtained by {@link Prism4j#tokenize(String, Prism4j.Grammar)}
+     * (immutable unless text is longer than the max weight)
+     */
+    @NotNull
+    public List<Prism4j.Node> tokenize(@NotNull String text, @NotNull Prism4j.Grammar grammar) {
+
+        final Key key = new Key(grammar, text);
+
+        synchronized (this) {
+            final List<Prism4j.Node> nodes = map.get(key);
+            if (nodes != null) {
+                hitCount += 1;
+                return nodes;
+            }
+            missCount += 1;
+        }
+
+        final int length = text.length();
+        if (length > maxWeight) {
+            // never cached, so it is not copied
+            return prism4j.tokenize(text, grammar);
+        }
+
+        final List<Prism4j.Node> nodes = immutable(text, prism4j.tokenize(text, grammar));
+
+        synchronized (this) {
+            final List<Prism4j.Node> existing = map.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            map.put(key, nodes);
+            weight += length;
+            trim();
+        }
+
+        return nodes;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weight = 0L;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * @return total length of cached texts
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    /**
+     * @return number of results that were removed from this cache to satisfy its bounds
+     * (does not include {@link #clear()})
+     */
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TokenizeCache{" +
+                "size=" + map.size() +
+                ", weight=" + weight +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+
+    // must be called when holding the lock
+    private void trim() {
+        final Iterator<Key> iterator = map.keySet().iterator();
+        while ((map.size() > maxEntries || weight > maxWeight) && iterator.hasNext()) {
+            final Key key = iterator.next();
+            iterator.remove();
+            weight -= key.text.length();
+            evictionCount += 1;
+        }
+    }
+
+    // copies nodes, so children lists cannot be modified (nodes themselves are immutable),
+    // without recursion as nesting can be deep
+    @NotNull
+    private static List<Prism4j.Node> immutable(
+            @NotNull String text,
+            @NotNull List<? extends Prism4j.Node> nodes) {
+
+        final ArrayDeque<Copy> stack = new ArrayDeque<>();
+        stack.push(new Copy(null, nodes, 0));
+
+        while (true) {
+
+            final Copy copy = stack.peek();
+
+            if (copy.iterator.hasNext()) {
+                final Prism4j.Node node = copy.iterator.next();
+                final int start = copy.position;
+                copy.position += node.textLength();
+                if (node.isSyntax()) {
+                    final Prism4j.Syntax syntax = (Prism4j.Syntax) node;
+                    stack.push(new Copy(syntax, syntax.children(), start));
+                } else {
+                    copy.out.add(new TextImpl(text, start, copy.position));
+                }
+                continue;
+            }
+
+            stack.pop();
+
+            final List<Prism4j.Node> out = Collections.unmodifiableList(copy.out);
+            final Copy parent = stack.peek();
+            if (parent == null) {
+                return out;
+            }
+
+            final Prism4j.Syntax syntax = copy.syntax;
+            parent.out.add(new SyntaxImpl(
+                    syntax.type(),
+                    out,
+                    syntax.alias(),
+                    text,
+                    copy.start,
+                    parent.position,
+                    syntax.greedy(),
+                    syntax.tokenized()
+            ));
+        }
+    }
+
+    // a list of nodes that is being copied (children of a syntax or top-level nodes)
+    private static class Copy {
+
+        final Prism4j.Syntax syntax;
+        final Iterator<? extends Prism4j.Node> iterator;
+        final List<Prism4j.Node> out;
+        final int start;
+
+        // end of the last copied node
+        int position;
+
+        Copy(@Nullable Prism4j.Syntax syntax, @NotNull List<? extends Prism4j.Node> nodes, int start) {
+            this.syntax = syntax;
+            this.iterator = nodes.iterator();
+            this.out = new ArrayList<>(nodes.size());
+            this.start = start;
+            this.position = start;
+        }
+    }
+
+    private static class Key {
+
+        private final Prism4j.Grammar grammar;
+        private final String text;
+        private final int hash;
+
+        Key(@NotNull Prism4j.Grammar grammar, @NotNull String text) {
+            this.grammar = grammar;
+            this.text = text;
+            this.hash = 31 * System.identityHashCode(grammar) + text.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return grammar == key.grammar
+                    && hash == key.hash
+                    && text.length() == key.text.length()
+                    && text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.noties.prism4j;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of a tokenize call. Must be referenced only by {@link Events}
+ */
+@Name(TokenizeEvent.NAME)
+@Label("Tokenize")
+@Category("Prism4j")
+@Description("Text tokenized by Prism4j")
+class TokenizeEvent extends Event {
+
+    static final String NAME = "io.noties.prism4j.Tokenize";
+
+    @Label("Language")
+    String language;
+
+    @Label("Input Length")
+    @Description("Number of chars in tokenized text")
+    int inputLength;
+
+    @Label("Node Count")
+    @Description("Number of created nodes (text and syntax, including nested ones)")
+    int nodeCount;
+}
@@ -0,0 +1,237 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects statistics of pattern searches for each pattern: number of searches, found matches,
+ * time spent and number of chars read by the matcher. Is attached to a {@link Prism4j} instance
+ * with {@link Prism4j#setProfiler(TokenizeProfiler)}. When no profiler is attached
+ * tokenization is not affected at all.
+ * <p>
+ * Statistics of a tokenize call are collected locally and added to the profiler when the call
+ * is finished, so a profiler can be shared by threads without contention on each search.
+ * Patterns are identified by instance together with the grammar and the token that contain them
+ * (the same token can be added to multiple grammars with {@code GrammarUtils.insertBeforeToken}),
+ * so the same pattern of a frozen grammar and of the original one are reported separately.
+ * Tokens of anonymous `inside` grammars are reported with the name of the grammar that
+ * contains it (for example, {@code javascript/inside}).
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see #entries()
+ * @see #report()
+ */
+public class TokenizeProfiler {
+
+    @NotNull
+    public static TokenizeProfiler create() {
+        return new TokenizeProfiler();
+    }
+
+    // guarded by `this`
+    private final Map<Key, Entry> entries = new HashMap<>();
+
+    private long calls;
+
+    private TokenizeProfiler() {
+    }
+
+    /**
+     * @return copies of entries (one per pattern) ordered by time spent (the most expensive first)
+     */
+    @NotNull
+    public synchronized List<Entry> entries() {
+        final List<Entry> list = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            list.add(new Entry(entry));
+        }
+        list.sort((lhs, rhs) -> Long.compare(rhs.nanos, lhs.nanos));
+        return list;
+    }
+
+    /**
+     * @return number of tokenize calls that were profiled
+     */
+    public synchronized long calls() {
+        return calls;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        calls = 0L;
+    }
+
+    /**
+     * @return human-readable table of entries, the most expensive first
+     */
+    @NotNull
+    public String report() {
+        final List<Entry> entries = entries();
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "%10s %10s %10s %12s %14s  %s%n",
+                "ms", "searches", "hits", "misses", "chars", "grammar/token: pattern"));
+        for (Entry entry : entries) {
+            builder.append(String.format(Locale.US, "%10.3f %10d %10d %12d %14d  %s/%s: %s%n",
+                    entry.nanos / 1_000_000D,
+                    entry.searches,
+                    entry.hits,
+                    entry.misses(),
+                    entry.chars,
+                    entry.grammar,
+                    entry.token(),
+                    entry.key.pattern.regex().pattern()));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TokenizeProfiler{" +
+                "calls=" + calls +
+                ", patterns=" + entries.size() +
+                '}';
+    }
+
+    // statistics of a single tokenize call
+    synchronized void add(@NotNull Collection<Entry> call) {
+        calls += 1;
+        for (Entry entry : call) {
+            final Entry existing = entries.get(entry.key);
+            if (existing == null) {
+                entries.put(entry.key, new Entry(entry));
+            } else {
+                existing.searches += entry.searches;
+                existing.hits += entry.hits;
+                existing.nanos += entry.nanos;
+                existing.chars += entry.chars;
+            }
+        }
+    }
+
+    // identifies a pattern of a token of a grammar by instances
+    static final class Key {
+
+        final Prism4j.Grammar grammar;
+        final Prism4j.Token token;
+        final Prism4j.Pattern pattern;
+
+        Key(@NotNull Prism4j.Grammar grammar, @NotNull Prism4j.Token token, @NotNull Prism4j.Pattern pattern) {
+            this.grammar = grammar;
+            this.token = token;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return grammar == key.grammar
+                    && token == key.token
+                    && pattern == key.pattern;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(grammar);
+            result = 31 * result + System.identityHashCode(token);
+            result = 31 * result + System.identityHashCode(pattern);
+            return result;
+        }
+    }
+
+    /**
+     * Statistics of a single pattern
+     */
+    public static class Entry {
+
+        final Key key;
+        private final String grammar;
+
+        long searches;
+        long hits;
+        long nanos;
+        long chars;
+
+        Entry(@NotNull Key key, @NotNull String grammar) {
+            this.key = key;
+            this.grammar = grammar;
+        }
+
+        private Entry(@NotNull Entry other) {
+            this(other.key, other.grammar);
+            this.searches = other.searches;
+            this.hits = other.hits;
+            this.nanos = other.nanos;
+            this.chars = other.chars;
+        }
+
+        /**
+         * @return name of the grammar that contains the token
+         */
+        @NotNull
+        public String grammar() {
+            return grammar;
+        }
+
+        @NotNull
+        public String token() {
+            return key.token.name();
+        }
+
+        @NotNull
+        public Prism4j.Pattern pattern() {
+            return key.pattern;
+        }
+
+        public long searches() {
+            return searches;
+        }
+
+        /**
+         * @return number of searches that found a match
+         */
+        public long hits() {
+            return hits;
+        }
+
+        public long misses() {
+            return searches - hits;
+        }
+
+        /**
+         * @return total time of searches (including a prefilter check)
+         */
+        public long nanos() {
+            return nanos;
+        }
+
+        /**
+         * @return number of chars read by the matcher (a char can be read multiple times,
+         * chars checked by a prefilter are not counted)
+         */
+        public long chars() {
+            return chars;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "grammar='" + grammar + '\'' +
+                    ", token='" + key.token.name() + '\'' +
+                    ", pattern=" + key.pattern.regex().pattern() +
+                    ", searches=" + searches +
+                    ", hits=" + hits +
+                    ", nanos=" + nanos +
+                    ", chars=" + chars +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Result of {@link Prism4j#tokenize(String, Prism4j.Grammar, TokenizeBudget)}. If the budget
+ * ran out, nodes are partially tokenized: syntax nodes that were matched before that are kept
+ * and the rest of the text is plain text nodes (all nodes together still cover the whole text).
+ * Token and pattern whose search was interrupted are reported, usually it is a pattern that
+ * backtracks catastrophically on this text.
+ */
+public class TokenizeResult {
+
+    private final List<Prism4j.Node> nodes;
+    private final Prism4j.Token exhaustedToken;
+    private final Prism4j.Pattern exhaustedPattern;
+
+    TokenizeResult(
+            @NotNull List<Prism4j.Node> nodes,
+            @Nullable Prism4j.Token exhaustedToken,
+            @Nullable Prism4j.Pattern exhaustedPattern) {
+        this.nodes = nodes;
+        this.exhaustedToken = exhaustedToken;
+        this.exhaustedPattern = exhaustedPattern;
+    }
+
+    /**
+     * @return nodes that are equal to what {@link Prism4j#tokenize(String, Prism4j.Grammar)} returns
+     * if {@link #isComplete()}, partially tokenized nodes otherwise
+     */
+    @NotNull
+    public List<Prism4j.Node> nodes() {
+        return nodes;
+    }
+
+    /**
+     * @return false if the budget ran out
+     */
+    public boolean isComplete() {
+        return exhaustedToken == null;
+    }
+
+    /**
+     * @return token whose search was in progress when the budget ran out (null if {@link #isComplete()})
+     */
+    @Nullable
+    public Prism4j.Token exhaustedToken() {
+        return exhaustedToken;
+    }
+
+    /**
+     * @return pattern whose search was in progress when the budget ran out (null if {@link #isComplete()})
+     */
+    @Nullable
+    public Prism4j.Pattern exhaustedPattern() {
+        return exhaustedPattern;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenizeResult{" +
+                "nodes.size=" + nodes.size() +
+                ", complete=" + isComplete() +
+                (exhaustedToken != null ? ", exhaustedToken=" + exhaustedToken.name() : "") +
+                (exhaustedPattern != null ? ", exhaustedPattern=" + exhaustedPattern.regex().pattern() : "") +
+                '}';
+    }
+}
@@ -0,0 +1,3 @@
+# Flight Recorder events are emitted only when jdk.jfr is available at runtime (it is not on Android),
+# classes that reference it are never loaded otherwise
+-dontwarn jdk.jfr.**
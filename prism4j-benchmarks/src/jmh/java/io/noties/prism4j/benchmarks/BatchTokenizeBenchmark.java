@@ -0,0 +1,94 @@
+package io.noties.prism4j.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import io.noties.prism4j.GrammarUtils;
+import io.noties.prism4j.Prism4j;
+
+/**
+ * Tokenizes a batch of small snippets (50-500 chars cut from the corpus of a language) with
+ * a call for each snippet and with a single batch call. Uses grammar locator generated
+ * for {@link TokenizeBenchmark}.
+ */
+@State(Scope.Benchmark)
+public class BatchTokenizeBenchmark {
+
+    @Param({
+            "java",
+            "javascript",
+            "json",
+            "markdown",
+            "markup",
+            "python"
+    })
+    public String language;
+
+    @Param({"1000"})
+    public int count;
+
+    // a frozen grammar is compiled once, a regular one is compiled by each call
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    private Prism4j prism4j;
+    private Prism4j.Grammar grammar;
+    private List<String> snippets;
+
+    @Setup
+    public void setup() throws IOException {
+
+        prism4j = new Prism4j(new BenchmarkGrammarLocator());
+
+        final String[] grammars = language.split("!?\\+");
+        for (String name : grammars) {
+            prism4j.grammar(name);
+        }
+
+        final Prism4j.Grammar grammar = prism4j.grammar(grammars[0]);
+        if (grammar == null) {
+            throw new IllegalStateException("No grammar found: " + grammars[0]);
+        }
+
+        this.grammar = frozen
+                ? GrammarUtils.freeze(grammar)
+                : grammar;
+
+        final String text = Corpus.create(language, Corpus.Size.LARGE);
+        final Random random = new Random(42L);
+
+        snippets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int length = 50 + random.nextInt(451);
+            final int start = random.nextInt(text.length() - length);
+            snippets.add(text.substring(start, start + length));
+        }
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        for (String snippet : snippets) {
+            blackhole.consume(prism4j.tokenize(snippet, grammar));
+        }
+    }
+
+    @Benchmark
+    public List<List<Prism4j.Node>> tokenizeAll() {
+        return prism4j.tokenizeAll(snippets, grammar);
+    }
+
+    @Benchmark
+    public List<List<Prism4j.Node>> tokenizeAllExecutor() {
+        return prism4j.tokenizeAll(snippets, grammar, ForkJoinPool.commonPool());
+    }
+}
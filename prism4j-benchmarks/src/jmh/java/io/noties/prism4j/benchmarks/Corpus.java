@@ -0,0 +1,82 @@
+package io.noties.prism4j.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates benchmark input from the test cases of a language folder (`prism4j-test/src/test/resources/languages`).
+ * Input of each test case is repeated in place and the result is cut (at a line end) to the requested length.
+ * Repeating all inputs joined instead would let a quote left open by one test case run through the next copy,
+ * which overflows java.util.regex recursion with the default thread stack (sql).
+ */
+abstract class Corpus {
+
+    static final String FIXTURES_PROPERTY = "prism4j.fixtures";
+
+    // separates input from the expected output in a test case
+    private static final String DELIMITER = "-{52}";
+
+    enum Size {
+
+        SMALL(1024),
+        MEDIUM(16 * 1024),
+        LARGE(256 * 1024);
+
+        final int length;
+
+        Size(int length) {
+            this.length = length;
+        }
+    }
+
+    @NotNull
+    static String create(@NotNull String folder, @NotNull Size size) throws IOException {
+
+        final String fixtures = System.getProperty(FIXTURES_PROPERTY);
+        if (fixtures == null) {
+            throw new IllegalStateException("`" + FIXTURES_PROPERTY + "` system property " +
+                    "must point to the test cases folder");
+        }
+
+        final File[] files = new File(fixtures, folder).listFiles((dir, name) -> name.endsWith(".test"));
+        if (files == null || files.length == 0) {
+            throw new IllegalStateException("No test cases found for `" + folder + "` in " + fixtures);
+        }
+
+        Arrays.sort(files);
+
+        final List<String> inputs = new ArrayList<>(files.length);
+        int length = 0;
+        for (File file : files) {
+            final String raw = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            final String input = raw.split(DELIMITER)[0].trim() + "\n\n";
+            inputs.add(input);
+            length += input.length();
+        }
+
+        final int copies = (size.length + length - 1) / length;
+        final StringBuilder builder = new StringBuilder(copies * length);
+        for (String input : inputs) {
+            for (int i = 0; i < copies; i++) {
+                builder.append(input);
+            }
+        }
+
+        final int end = builder.indexOf("\n", size.length);
+        if (end != -1) {
+            builder.setLength(end + 1);
+        }
+
+        return builder.toString();
+    }
+
+    private Corpus() {
+    }
+}
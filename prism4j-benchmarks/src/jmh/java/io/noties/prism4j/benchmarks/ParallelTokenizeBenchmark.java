@@ -0,0 +1,74 @@
+package io.noties.prism4j.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import io.noties.prism4j.GrammarUtils;
+import io.noties.prism4j.Prism4j;
+
+/**
+ * Shows how {@link Prism4j#tokenizeParallel(String, Prism4j.Grammar, ForkJoinPool)} scales
+ * with number of threads (a pool with {@code threads} parallelism). Compare with
+ * {@code TokenizeBenchmark.tokenizeFrozen} of the same language and size for sequential
+ * tokenization. Uses grammar locator generated for {@link TokenizeBenchmark}.
+ */
+@State(Scope.Benchmark)
+public class ParallelTokenizeBenchmark {
+
+    @Param({
+            "java",
+            "javascript",
+            "json"
+    })
+    public String language;
+
+    // inputs smaller than a few chunks are not split
+    @Param({"LARGE"})
+    public String size;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Prism4j prism4j;
+    private Prism4j.Grammar grammar;
+    private String text;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() throws IOException {
+
+        prism4j = new Prism4j(new BenchmarkGrammarLocator());
+
+        final String[] grammars = language.split("!?\\+");
+        for (String name : grammars) {
+            prism4j.grammar(name);
+        }
+
+        final Prism4j.Grammar grammar = prism4j.grammar(grammars[0]);
+        if (grammar == null) {
+            throw new IllegalStateException("No grammar found: " + grammars[0]);
+        }
+
+        this.grammar = GrammarUtils.freeze(grammar);
+        text = Corpus.create(language, Corpus.Size.valueOf(size));
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<Prism4j.Node> tokenizeParallel() {
+        return prism4j.tokenizeParallel(text, grammar, pool);
+    }
+}
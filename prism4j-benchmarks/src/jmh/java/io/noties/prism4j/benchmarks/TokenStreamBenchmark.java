@@ -0,0 +1,77 @@
+package io.noties.prism4j.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+import io.noties.prism4j.GrammarUtils;
+import io.noties.prism4j.Prism4j;
+import io.noties.prism4j.TokenStream;
+
+/**
+ * Compares a tree of nodes with a {@link TokenStream} that is written while text is tokenized
+ * and with a stream that is created from a tree. Memory allocated by a call is reported by
+ * the gc profiler ({@code gc.alloc.rate.norm}). A tree is retained until it is returned, while
+ * a stream retains only top-level nodes and a single subtree while it is written (so it requires
+ * a lot smaller heap for a large input). Uses grammar locator generated for {@link TokenizeBenchmark}.
+ */
+@State(Scope.Benchmark)
+public class TokenStreamBenchmark {
+
+    @Param({
+            "java",
+            "javascript",
+            "json",
+            "markdown",
+            "markup!+css+javascript",
+            "sql"
+    })
+    public String language;
+
+    // see Corpus.Size
+    @Param({"MEDIUM", "LARGE"})
+    public String size;
+
+    private Prism4j prism4j;
+    private Prism4j.Grammar grammar;
+    private String text;
+
+    @Setup
+    public void setup() throws IOException {
+
+        prism4j = new Prism4j(new BenchmarkGrammarLocator());
+
+        final String[] grammars = language.split("!?\\+");
+        for (String name : grammars) {
+            prism4j.grammar(name);
+        }
+
+        final Prism4j.Grammar grammar = prism4j.grammar(grammars[0]);
+        if (grammar == null) {
+            throw new IllegalStateException("No grammar found: " + grammars[0]);
+        }
+
+        this.grammar = GrammarUtils.freeze(grammar);
+        text = Corpus.create(language, Corpus.Size.valueOf(size));
+    }
+
+    @Benchmark
+    public List<Prism4j.Node> tokenize() {
+        return prism4j.tokenize(text, grammar);
+    }
+
+    @Benchmark
+    public TokenStream tokenizeToStream() {
+        return prism4j.tokenizeToStream(text, grammar);
+    }
+
+    @Benchmark
+    public TokenStream createFromNodes() {
+        return TokenStream.create(text, prism4j.tokenize(text, grammar));
+    }
+}
@@ -0,0 +1,97 @@
+package io.noties.prism4j.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+import io.noties.prism4j.GrammarUtils;
+import io.noties.prism4j.Prism4j;
+import io.noties.prism4j.annotations.PrismBundle;
+
+/**
+ * Tokenizes generated corpus of each language (folder with test cases) with a regular
+ * and a frozen grammar. Folder name lists all grammars that must be requested (additional ones
+ * modify the first one, for example `markup!+css+javascript`).
+ * <p>
+ * Memory allocated by a single call is reported by the gc profiler as {@code gc.alloc.rate.norm}
+ * (bytes per operation), compare it before and after a change in the engine.
+ */
+@State(Scope.Benchmark)
+@PrismBundle(includeAll = true, grammarLocatorClassName = ".BenchmarkGrammarLocator")
+public class TokenizeBenchmark {
+
+    @Param({
+            "brainfuck",
+            "c",
+            "clike",
+            "clojure",
+            "cpp",
+            "csharp",
+            "css",
+            "css!+css-extras",
+            "dart",
+            "git",
+            "go",
+            "groovy",
+            "java",
+            "javascript",
+            "json",
+            "kotlin",
+            "latex",
+            "makefile",
+            "markdown",
+            "markup",
+            "markup!+css",
+            "markup!+css+javascript",
+            "markup!+javascript",
+            "python",
+            "scala",
+            "sql",
+            "swift",
+            "yaml"
+    })
+    public String language;
+
+    // see Corpus.Size
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public String size;
+
+    private Prism4j prism4j;
+    private Prism4j.Grammar grammar;
+    private Prism4j.Grammar frozen;
+    private String text;
+
+    @Setup
+    public void setup() throws IOException {
+
+        prism4j = new Prism4j(new BenchmarkGrammarLocator());
+
+        final String[] grammars = language.split("!?\\+");
+        for (String name : grammars) {
+            prism4j.grammar(name);
+        }
+
+        grammar = prism4j.grammar(grammars[0]);
+        if (grammar == null) {
+            throw new IllegalStateException("No grammar found: " + grammars[0]);
+        }
+
+        frozen = GrammarUtils.freeze(grammar);
+        text = Corpus.create(language, Corpus.Size.valueOf(size));
+    }
+
+    @Benchmark
+    public List<Prism4j.Node> tokenize() {
+        return prism4j.tokenize(text, grammar);
+    }
+
+    @Benchmark
+    public List<Prism4j.Node> tokenizeFrozen() {
+        return prism4j.tokenize(text, frozen);
+    }
+}
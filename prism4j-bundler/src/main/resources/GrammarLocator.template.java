@@ -8,6 +8,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.noties.prism4j.GrammarLocator;
 import io.noties.prism4j.Prism4j;
@@ -31,7 +32,21 @@ public class {{class-name}} implements GrammarLocator {
         }
     };
 
-    private final Map<String, Prism4j.Grammar> cache = new HashMap<>(3);
+    // contains only fully created (and modified) grammars, so it can be read without a lock
+    private final Map<String, Prism4j.Grammar> cache = new ConcurrentHashMap<>(3);
+
+    // grammars are created one at a time, fields below are accessed only while holding this lock
+    private final Object lock = new Object();
+
+    // languages that are being created (`obtainGrammar` has not returned yet)
+    private final Set<String> creating = new HashSet<>(3);
+
+    // languages that are created but not yet published to `cache` (published all at once
+    // when the outermost request finishes, so other threads never see a grammar that is
+    // still being modified by another language)
+    private final Map<String, Prism4j.Grammar> pending = new HashMap<>(3);
+
+    private int depth;
 
     @Nullable
     @Override
@@ -41,21 +56,60 @@ public class {{class-name}} implements GrammarLocator {
 
         Prism4j.Grammar grammar = cache.get(name);
         if (grammar != null) {
-            if (NULL == grammar) {
-                grammar = null;
-            }
-            return grammar;
+            return NULL == grammar ? null : grammar;
         }
 
-        grammar = obtainGrammar(prism4j, name);
-        if (grammar == null) {
-            cache.put(name, NULL);
-        } else {
-            cache.put(name, grammar);
-            triggerModify(prism4j, name);
-        }
+        synchronized (lock) {
+
+            grammar = cache.get(name);
+            if (grammar == null) {
+                // requested by another language that is being created (by this thread)
+                grammar = pending.get(name);
+            }
+            if (grammar != null) {
+                return NULL == grammar ? null : grammar;
+            }
+
+            // a language modifies another one when it is created, so if modified language requests
+            // it from `triggerModify` nothing must be done (modification will follow)
+            if (creating.contains(name)) {
+                return null;
+            }
+
+            depth += 1;
+
+            boolean success = false;
+
+            try {
+
+                creating.add(name);
+                try {
+                    grammar = obtainGrammar(prism4j, name);
+                } finally {
+                    creating.remove(name);
+                }
+
+                if (grammar == null) {
+                    pending.put(name, NULL);
+                } else {
+                    pending.put(name, grammar);
+                    triggerModify(prism4j, name);
+                }
 
-        return grammar;
+                success = true;
+
+            } finally {
+                depth -= 1;
+                if (depth == 0) {
+                    if (success) {
+                        cache.putAll(pending);
+                    }
+                    pending.clear();
+                }
+            }
+
+            return grammar;
+        }
     }
 
     @NotNull
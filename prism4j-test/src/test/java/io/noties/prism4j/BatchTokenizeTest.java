@@ -0,0 +1,102 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BatchTokenizeTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void same_result() {
+        for (String folder : TestUtils.languageFolders()) {
+            final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, folder);
+            final List<String> snippets = snippets(TestUtils.corpus(folder));
+            assertResults(folder, grammar, snippets, prism4j.tokenizeAll(snippets, grammar));
+        }
+    }
+
+    @Test
+    public void executor() {
+
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "markup!+css+javascript");
+
+        // a few parts
+        final String corpus = TestUtils.corpus("markup!+css+javascript");
+        final List<String> snippets = new ArrayList<>();
+        while (snippets.size() * 256 < 4 * BatchTokenizer.MIN_PART_LENGTH) {
+            snippets.addAll(snippets(corpus));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertResults("executor", grammar, snippets, prism4j.tokenizeAll(snippets, grammar, executor));
+            Assert.assertTrue(prism4j.tokenizeAll(Collections.<String>emptyList(), grammar, executor).isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void small() {
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "json");
+        Assert.assertTrue(prism4j.tokenizeAll(Collections.<String>emptyList(), grammar).isEmpty());
+
+        // each text is tokenized on its own (a string is not closed by the next text)
+        final List<String> texts = Arrays.asList("[1, \"a", "b\"]", " ", "{}");
+        assertResults("small", grammar, texts, prism4j.tokenizeAll(texts, grammar));
+    }
+
+    private void assertResults(
+            @NotNull String message,
+            @NotNull Prism4j.Grammar grammar,
+            @NotNull List<String> snippets,
+            @NotNull List<List<Prism4j.Node>> results) {
+        Assert.assertEquals(message, snippets.size(), results.size());
+        for (int i = 0; i < snippets.size(); i++) {
+            Assert.assertEquals(
+                    message + " #" + i,
+                    TestUtils.dump(prism4j.tokenize(snippets.get(i), grammar)),
+                    TestUtils.dump(results.get(i)));
+            // nodes reference their own snippet
+            int start = 0;
+            for (Prism4j.Node node : results.get(i)) {
+                final CharSequence source = node.isSyntax()
+                        ? ((SyntaxImpl) node).source()
+                        : ((TextImpl) node).source();
+                Assert.assertSame(message + " #" + i, snippets.get(i), source);
+                Assert.assertEquals(message + " #" + i, start, node.isSyntax() ? ((SyntaxImpl) node).start() : ((TextImpl) node).start());
+                start += node.textLength();
+            }
+        }
+    }
+
+    // parts of text cut at different positions (not only at line ends)
+    @NotNull
+    private static List<String> snippets(@NotNull String text) {
+        final List<String> snippets = new ArrayList<>();
+        int start = 0;
+        int length = 50;
+        while (start < text.length()) {
+            final int end = Math.min(text.length(), start + length);
+            snippets.add(text.substring(start, end));
+            start = end;
+            length = 50 + (length * 7) % 450;
+        }
+        return snippets;
+    }
+}
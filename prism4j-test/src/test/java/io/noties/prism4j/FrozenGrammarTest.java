@@ -0,0 +1,112 @@
+package io.noties.prism4j;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.regex.Pattern.compile;
+import static io.noties.prism4j.Prism4j.grammar;
+import static io.noties.prism4j.Prism4j.pattern;
+import static io.noties.prism4j.Prism4j.token;
+
+public class FrozenGrammarTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void same_output() {
+        for (String folder : TestUtils.languageFolders()) {
+            final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, folder);
+            final Prism4j.Grammar frozen = GrammarUtils.freeze(grammar);
+            final String input = TestUtils.corpus(folder);
+            Assert.assertEquals(
+                    folder,
+                    TestUtils.dump(prism4j.tokenize(input, grammar)),
+                    TestUtils.dump(prism4j.tokenize(input, frozen)));
+        }
+    }
+
+    @Test
+    public void freeze_frozen() {
+        final Prism4j.Grammar frozen = GrammarUtils.freeze(TestUtils.folderGrammar(prism4j, "json"));
+        Assert.assertSame(frozen, GrammarUtils.freeze(frozen));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void tokens_immutable() {
+        final Prism4j.Grammar frozen = GrammarUtils.freeze(TestUtils.folderGrammar(prism4j, "json"));
+        frozen.tokens().add(token("test", pattern(compile("test"))));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void patterns_immutable() {
+        final Prism4j.Grammar frozen = GrammarUtils.freeze(TestUtils.folderGrammar(prism4j, "json"));
+        frozen.tokens().get(0).patterns().clear();
+    }
+
+    @Test
+    public void original_modification_not_reflected() {
+        final Prism4j.Grammar original = grammar("test", token("a", pattern(compile("a"))));
+        final Prism4j.Grammar frozen = GrammarUtils.freeze(original);
+        original.tokens().add(token("b", pattern(compile("b"))));
+
+        final List<Prism4j.Node> nodes = prism4j.tokenize("ab", frozen);
+        Assert.assertEquals(2, nodes.size());
+        Assert.assertTrue(nodes.get(0).isSyntax());
+        Assert.assertFalse(nodes.get(1).isSyntax());
+    }
+
+    @Test
+    public void recursive() {
+        // grammar that references itself as `inside`
+        final List<Prism4j.Token> tokens = new ArrayList<>();
+        final Prism4j.Grammar original = grammar("recursive", tokens);
+        tokens.add(token("parens", pattern(compile("(\\()[\\s\\S]*(?=\\))"), true, false, null, original)));
+
+        final Prism4j.Grammar frozen = GrammarUtils.freeze(original);
+        Assert.assertSame(frozen, frozen.tokens().get(0).patterns().get(0).inside());
+
+        // compiled grammar is linked to itself (it is created when grammar is frozen)
+        final CompiledGrammar compiled = ((FrozenGrammar) frozen).compiled();
+        Assert.assertSame(compiled, ((FrozenGrammar) frozen).compiled());
+        Assert.assertSame(compiled, compiled.compiledInsides[0]);
+
+        final String input = "(((a)))";
+        Assert.assertEquals(
+                TestUtils.dump(prism4j.tokenize(input, original)),
+                TestUtils.dump(prism4j.tokenize(input, frozen)));
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+
+        final String folder = "markup!+css+javascript";
+        final Prism4j.Grammar frozen = GrammarUtils.freeze(TestUtils.folderGrammar(prism4j, folder));
+        final String input = TestUtils.corpus(folder);
+        final String expected = TestUtils.dump(prism4j.tokenize(input, frozen));
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executorService.submit(() -> TestUtils.dump(prism4j.tokenize(input, frozen))));
+            }
+            for (Future<String> future : futures) {
+                Assert.assertEquals(expected, future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.noties.prism4j.annotations.PrismBundle;
+
+@PrismBundle(include = {"markup", "css", "javascript"}, grammarLocatorClassName = ".GrammarLocatorLocator")
+public class GrammarLocatorTest {
+
+    @Test
+    public void modified_once_when_modifier_requested_first() {
+        // css modifies markup, markup requests css when created (to be modified)
+        final Prism4j prism4j = new Prism4j(new GrammarLocatorLocator());
+        Assert.assertNotNull(prism4j.grammar("css"));
+
+        final Prism4j.Grammar markup = prism4j.grammar("markup");
+        Assert.assertNotNull(markup);
+        Assert.assertEquals(1, count(markup, "style"));
+        Assert.assertEquals(1, count(markup, "script"));
+    }
+
+    @Test
+    public void modified_once_when_modified_requested_first() {
+        final Prism4j prism4j = new Prism4j(new GrammarLocatorLocator());
+        final Prism4j.Grammar markup = prism4j.grammar("markup");
+        Assert.assertNotNull(markup);
+        Assert.assertEquals(1, count(markup, "style"));
+        Assert.assertEquals(1, count(markup, "script"));
+        Assert.assertSame(markup, prism4j.grammar("html"));
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+
+        final int threads = 8;
+        final String[] languages = {"css", "markup", "javascript", "xml", "js"};
+
+        for (int attempt = 0; attempt < 16; attempt++) {
+
+            final Prism4j prism4j = new Prism4j(new GrammarLocatorLocator());
+            final CountDownLatch latch = new CountDownLatch(1);
+            final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+
+            try {
+                final List<Future<Prism4j.Grammar[]>> futures = new ArrayList<>(threads);
+                for (int i = 0; i < threads; i++) {
+                    final int offset = i;
+                    futures.add(executorService.submit(() -> {
+                        latch.await();
+                        final Prism4j.Grammar[] grammars = new Prism4j.Grammar[languages.length];
+                        for (int l = 0; l < languages.length; l++) {
+                            final int index = (l + offset) % languages.length;
+                            grammars[index] = prism4j.grammar(languages[index]);
+                        }
+                        return grammars;
+                    }));
+                }
+
+                latch.countDown();
+
+                final Prism4j.Grammar[] expected = futures.get(0).get();
+                for (Future<Prism4j.Grammar[]> future : futures) {
+                    final Prism4j.Grammar[] actual = future.get();
+                    for (int i = 0; i < expected.length; i++) {
+                        Assert.assertNotNull(languages[i], actual[i]);
+                        Assert.assertSame(languages[i], expected[i], actual[i]);
+                    }
+                }
+
+                final Prism4j.Grammar markup = prism4j.grammar("markup");
+                Assert.assertNotNull(markup);
+                Assert.assertEquals(1, count(markup, "style"));
+                Assert.assertEquals(1, count(markup, "script"));
+
+            } finally {
+                executorService.shutdown();
+            }
+        }
+    }
+
+    private static int count(@NotNull Prism4j.Grammar grammar, @NotNull String name) {
+        int count = 0;
+        for (Prism4j.Token token : grammar.tokens()) {
+            if (name.equals(token.name())) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,119 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class IncrementalTest {
+
+    private static final String CHARS = "abc{}()[]<>\"'/*\n \t;:=#-+.,019`\\$@!?&|%";
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void random_edits() {
+
+        final Random random = new Random(42L);
+
+        for (String folder : TestUtils.languageFolders()) {
+
+            final Prism4j.Grammar grammar = GrammarUtils.freeze(TestUtils.folderGrammar(prism4j, folder));
+
+            IncrementalResult result = prism4j.tokenizeIncremental(TestUtils.corpus(folder), grammar);
+
+            for (int i = 0; i < 24; i++) {
+
+                final String text = result.text();
+                final int offset = random.nextInt(text.length() + 1);
+                final int removed = random.nextInt(Math.min(8, text.length() - offset) + 1);
+
+                final StringBuilder inserted = new StringBuilder();
+                for (int c = 0, count = random.nextInt(4); c < count; c++) {
+                    // mix of chars that are meaningful for grammars and chars from the text itself
+                    inserted.append(random.nextBoolean()
+                            ? CHARS.charAt(random.nextInt(CHARS.length()))
+                            : text.charAt(random.nextInt(text.length())));
+                }
+
+                final String edited = text.substring(0, offset) + inserted + text.substring(offset + removed);
+                if (edited.isEmpty()) {
+                    continue;
+                }
+
+                result = prism4j.retokenize(result, offset, removed, inserted.toString());
+
+                Assert.assertEquals(folder, edited, result.text());
+                assertSameAsTokenize(folder + ", offset: " + offset + ", removed: " + removed
+                        + ", inserted: '" + inserted + "'", result);
+            }
+        }
+    }
+
+    @Test
+    public void greedy_comment_opened_and_closed() {
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "javascript");
+
+        IncrementalResult result = prism4j.tokenizeIncremental("var a = 1; /* b */ var c = '*/';", grammar);
+        assertSameAsTokenize("initial", result);
+
+        // comment now spans to the string
+        result = prism4j.retokenize(result, 16, 2, "");
+        Assert.assertEquals("var a = 1; /* b  var c = '*/';", result.text());
+        assertSameAsTokenize("opened", result);
+
+        // and is closed again
+        result = prism4j.retokenize(result, 16, 0, "*/");
+        assertSameAsTokenize("closed", result);
+
+        // comment start removed
+        result = prism4j.retokenize(result, 11, 2, "");
+        assertSameAsTokenize("removed", result);
+    }
+
+    @Test
+    public void inside_grammars() {
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "markup!+css+javascript");
+
+        IncrementalResult result = prism4j.tokenizeIncremental(
+                "<div>text</div>\n<script>var a = 1;</script>\n<style>a { color: red; }</style>\n<p>end</p>",
+                grammar);
+        assertSameAsTokenize("initial", result);
+
+        // edit inside a script
+        result = prism4j.retokenize(result, 28, 1, "'1'");
+        assertSameAsTokenize("script", result);
+
+        // break style tag
+        result = prism4j.retokenize(result, 47, 1, "");
+        assertSameAsTokenize("style", result);
+
+        // edit before everything
+        result = prism4j.retokenize(result, 0, 0, "<!-- -->");
+        assertSameAsTokenize("start", result);
+
+        // edit at the very end
+        result = prism4j.retokenize(result, result.text().length(), 0, "<b>");
+        assertSameAsTokenize("end", result);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void out_of_bounds() {
+        final IncrementalResult result = prism4j.tokenizeIncremental("[1]", TestUtils.folderGrammar(prism4j, "json"));
+        prism4j.retokenize(result, 2, 2, "");
+    }
+
+    private void assertSameAsTokenize(@NotNull String message, @NotNull IncrementalResult result) {
+        Assert.assertEquals(
+                message,
+                TestUtils.dump(prism4j.tokenize(result.text(), result.grammar())),
+                TestUtils.dump(result.nodes()));
+    }
+}
@@ -0,0 +1,148 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class JfrEventsTest {
+
+    private static final String TOKENIZE = "io.noties.prism4j.Tokenize";
+    private static final String GRAMMAR = "io.noties.prism4j.Grammar";
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void not_recorded() {
+        Assert.assertNull(Events.beginTokenize());
+        Assert.assertNull(Events.beginGrammar());
+    }
+
+    @Test
+    public void grammar() throws IOException {
+
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(GRAMMAR).withThreshold(java.time.Duration.ZERO);
+            recording.start();
+            Assert.assertNotNull(prism4j.grammar("java"));
+            Assert.assertNotNull(prism4j.grammar("java"));
+            Assert.assertNull(prism4j.grammar("no-such-language"));
+            recording.stop();
+            events = events(recording, GRAMMAR);
+        }
+
+        final List<RecordedEvent> java = new ArrayList<>();
+        final List<RecordedEvent> missing = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            final String language = event.getString("language");
+            if ("java".equals(language)) {
+                java.add(event);
+            } else if ("no-such-language".equals(language)) {
+                missing.add(event);
+            }
+        }
+
+        // the first lookup creates grammar (and lookups of its dependencies are recorded too),
+        // the second one returns it from the cache of the locator
+        Assert.assertEquals(events.toString(), 2, java.size());
+        Assert.assertTrue(java.get(0).getBoolean("found"));
+        Assert.assertTrue(java.get(0).getBoolean("created"));
+        Assert.assertTrue(java.get(1).getBoolean("found"));
+        Assert.assertFalse(java.get(1).getBoolean("created"));
+        Assert.assertTrue(events.size() > 3);
+
+        Assert.assertEquals(1, missing.size());
+        Assert.assertFalse(missing.get(0).getBoolean("found"));
+        Assert.assertFalse(missing.get(0).getBoolean("created"));
+    }
+
+    @Test
+    public void grammar_created_before_recording() throws IOException {
+
+        Assert.assertNotNull(prism4j.grammar("json"));
+
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(GRAMMAR).withThreshold(java.time.Duration.ZERO);
+            recording.start();
+            Assert.assertNotNull(prism4j.grammar("json"));
+            recording.stop();
+            events = events(recording, GRAMMAR);
+        }
+
+        Assert.assertEquals(1, events.size());
+        Assert.assertTrue(events.get(0).getBoolean("found"));
+        Assert.assertFalse(events.get(0).getBoolean("created"));
+    }
+
+    @Test
+    public void tokenize() throws IOException {
+
+        final Prism4j.Grammar grammar = prism4j.grammar("json");
+        Assert.assertNotNull(grammar);
+
+        final String input = TestUtils.corpus("json");
+        final List<Prism4j.Node> nodes = prism4j.tokenize(input, grammar);
+
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(TOKENIZE).withThreshold(java.time.Duration.ZERO);
+            recording.start();
+            prism4j.tokenize(input, grammar);
+            prism4j.tokenizeToStream(input, grammar);
+            prism4j.tokenize(input, grammar, TokenizeBudget.steps(Long.MAX_VALUE));
+            recording.stop();
+            events = events(recording, TOKENIZE);
+        }
+
+        Assert.assertEquals(3, events.size());
+        for (RecordedEvent event : events) {
+            Assert.assertEquals("json", event.getString("language"));
+            Assert.assertEquals(input.length(), event.getInt("inputLength"));
+            Assert.assertEquals(nodeCount(nodes), event.getInt("nodeCount"));
+        }
+    }
+
+    private static int nodeCount(@NotNull List<? extends Prism4j.Node> nodes) {
+        int count = nodes.size();
+        for (Prism4j.Node node : nodes) {
+            if (node.isSyntax()) {
+                count += nodeCount(((Prism4j.Syntax) node).children());
+            }
+        }
+        return count;
+    }
+
+    @NotNull
+    private static List<RecordedEvent> events(@NotNull Recording recording, @NotNull String name) throws IOException {
+        final Path path = Files.createTempFile("prism4j", ".jfr");
+        try {
+            recording.dump(path);
+            final List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(path)) {
+                if (name.equals(event.getEventType().getName())) {
+                    events.add(event);
+                }
+            }
+            return events;
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class KeywordMatcherTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void keyword_patterns() {
+        final String[] patterns = {
+                "\\b(?:if|else|while)\\b",
+                "\\b(?:bool|complex(?:64|128)|u?int(?:8|16|32|64)?|go(?:to)?)\\b",
+                "\\b(?:FOR(?: EACH ROW)?|WITH(?: ROLLUP|IN)?)\\b",
+                "\\b(?:AVG|COUNT)(?=\\s*\\()"
+        };
+        for (String pattern : patterns) {
+            Assert.assertNotNull(pattern, KeywordMatcher.of(Prism4j.pattern(Pattern.compile(pattern), false)));
+        }
+        Assert.assertNotNull(KeywordMatcher.of(Prism4j.pattern(Pattern.compile("(^|[^.])\\b(?:as|is)\\b"), true)));
+    }
+
+    @Test
+    public void not_keyword_patterns() {
+        final String[] patterns = {
+                "\\b(?:if|else)",
+                "(?:if|else)\\b",
+                "\\b(?:if|else|[A-Z]\\S+)\\b",
+                "\\b(?:if|else)\\*",
+                "@\\b(?:if|else)\\b",
+                "\\b(?:if|else|)\\b",
+                "\\b(?:if|else )\\b",
+                "\\b(?:if|el.se)\\b"
+        };
+        for (String pattern : patterns) {
+            Assert.assertNull(pattern, KeywordMatcher.of(Prism4j.pattern(Pattern.compile(pattern), false)));
+        }
+
+        // lookbehind flag must match the pattern
+        Assert.assertNull(KeywordMatcher.of(Prism4j.pattern(Pattern.compile("\\b(?:if|else)\\b"), true)));
+        Assert.assertNull(KeywordMatcher.of(Prism4j.pattern(Pattern.compile("(^|[^.])\\b(?:as|is)\\b"), false)));
+
+        // unicode case
+        Assert.assertNull(KeywordMatcher.of(Prism4j.pattern(Pattern.compile("\\b(?:if|else)\\b", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE), false)));
+    }
+
+    @Test
+    public void same_as_regex() {
+        final String text = "for each row FOR EACH ROWS for  each row; with rollup WITHIN within WITH\n" +
+                "goto go gob int int8 uint64 uint128 complex64 complex complex128x _if if_ 1if if1 else\n" +
+                "x.as as .is is count (avg (AVG( count  (x) sum( COUNT\n" +
+                "\u00E9if if\u00E9 e\u0300lse els\u00E8 \u212Aif \u212A";
+        assertSameAsRegex(text, "\\b(?:if|else|while)\\b", 0, false);
+        assertSameAsRegex(text, "\\b(?:bool|complex(?:64|128)|u?int(?:8|16|32|64)?|go(?:to)?)\\b", 0, false);
+        assertSameAsRegex(text, "\\b(?:FOR(?: EACH ROW)?|WITH(?: ROLLUP|IN)?)\\b", Pattern.CASE_INSENSITIVE, false);
+        assertSameAsRegex(text, "\\b(?:FOR EACH|FOR(?: EACH ROW)?)\\b", Pattern.CASE_INSENSITIVE, false);
+        assertSameAsRegex(text, "\\b(?:AVG|COUNT)(?=\\s*\\()", Pattern.CASE_INSENSITIVE, false);
+        assertSameAsRegex(text, "(^|[^.])\\b(?:as|is)\\b", 0, true);
+        assertSameAsRegex(text, "\\b(?:k|if)\\b", Pattern.CASE_INSENSITIVE, false);
+    }
+
+    @Test
+    public void same_as_regex_bundled() {
+
+        final Random random = new Random(42L);
+
+        for (String folder : TestUtils.languageFolders()) {
+
+            final String text = TestUtils.corpus(folder);
+            final Set<Prism4j.Grammar> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            for (String name : TestUtils.folderGrammars(folder)) {
+                final Prism4j.Grammar grammar = prism4j.grammar(name);
+                if (grammar != null) {
+                    check(grammar, text, random, visited);
+                }
+            }
+        }
+    }
+
+    private static void check(
+            @NotNull Prism4j.Grammar grammar,
+            @NotNull String text,
+            @NotNull Random random,
+            @NotNull Set<Prism4j.Grammar> visited) {
+
+        if (!visited.add(grammar)) {
+            return;
+        }
+
+        for (Prism4j.Token token : grammar.tokens()) {
+            for (Prism4j.Pattern pattern : token.patterns()) {
+
+                final KeywordMatcher keywords = KeywordMatcher.of(pattern);
+                if (keywords != null) {
+                    for (int i = 0; i < 200; i++) {
+                        final int start = random.nextInt(text.length());
+                        final int end = Math.min(text.length(), start + random.nextInt(i % 2 == 0 ? 32 : 2048));
+                        assertSameAsRegex(text, pattern.regex(), pattern.lookbehind(), keywords, start, end);
+                    }
+                }
+
+                final Prism4j.Grammar inside = pattern.inside();
+                if (inside != null) {
+                    check(inside, text, random, visited);
+                }
+            }
+        }
+    }
+
+    private static void assertSameAsRegex(@NotNull String text, @NotNull String pattern, int flags, boolean lookbehind) {
+        final Pattern regex = Pattern.compile(pattern, flags);
+        final KeywordMatcher keywords = KeywordMatcher.of(Prism4j.pattern(regex, lookbehind));
+        Assert.assertNotNull(pattern, keywords);
+        for (int start = 0; start < text.length(); start++) {
+            for (int end = start; end <= text.length(); end += 3) {
+                assertSameAsRegex(text, regex, lookbehind, keywords, start, end);
+            }
+        }
+    }
+
+    private static void assertSameAsRegex(
+            @NotNull String text,
+            @NotNull Pattern regex,
+            boolean lookbehind,
+            @NotNull KeywordMatcher keywords,
+            int start,
+            int end) {
+
+        final long result = keywords.find(text, start, end);
+        if (result == KeywordMatcher.FALLBACK) {
+            return;
+        }
+
+        final Matcher matcher = regex.matcher(text);
+        matcher.region(start, end);
+
+        final String message = regex.pattern() + " [" + start + ", " + end + ")";
+
+        if (!matcher.find()) {
+            Assert.assertEquals(message, KeywordMatcher.NOT_FOUND, result);
+            return;
+        }
+
+        Assert.assertNotEquals(message, KeywordMatcher.NOT_FOUND, result);
+        Assert.assertEquals(
+                message,
+                matcher.start() + MatchContext.lookbehindLength(matcher, lookbehind),
+                KeywordMatcher.start(result));
+        Assert.assertEquals(message, matcher.end(), KeywordMatcher.end(result));
+    }
+}
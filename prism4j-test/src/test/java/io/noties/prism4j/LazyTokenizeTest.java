@@ -0,0 +1,108 @@
+package io.noties.prism4j;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class LazyTokenizeTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void same_result() {
+        for (String folder : TestUtils.languageFolders()) {
+            final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, folder);
+            final String input = TestUtils.corpus(folder);
+            Assert.assertEquals(
+                    folder,
+                    TestUtils.dump(prism4j.tokenize(input, grammar)),
+                    TestUtils.dump(prism4j.tokenizeLazy(input, grammar)));
+        }
+    }
+
+    @Test
+    public void children_on_access() {
+
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "markup!+css+javascript");
+        final String input = TestUtils.corpus("markup!+css+javascript");
+
+        final List<Prism4j.Node> nodes = prism4j.tokenizeLazy(input, grammar);
+
+        final List<LazySyntax> lazy = new ArrayList<>();
+        for (Prism4j.Node node : nodes) {
+            if (node instanceof LazySyntax) {
+                lazy.add((LazySyntax) node);
+            }
+        }
+        Assert.assertFalse(lazy.isEmpty());
+
+        final LazySyntax syntax = lazy.get(0);
+        Assert.assertFalse(syntax.isTokenized());
+        Assert.assertTrue(syntax.tokenized());
+
+        final List<? extends Prism4j.Node> children = syntax.children();
+        Assert.assertTrue(syntax.isTokenized());
+        Assert.assertSame(children, syntax.children());
+
+        // children cover the node, nested lazy nodes are not tokenized yet
+        int length = 0;
+        for (Prism4j.Node child : children) {
+            length += child.textLength();
+            if (child instanceof LazySyntax) {
+                Assert.assertFalse(((LazySyntax) child).isTokenized());
+            }
+        }
+        Assert.assertEquals(syntax.textLength(), length);
+
+        // other nodes are not affected
+        for (int i = 1; i < lazy.size(); i++) {
+            Assert.assertFalse(lazy.get(i).isTokenized());
+        }
+    }
+
+    @Test
+    public void concurrent_access() throws Exception {
+
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "markup!+css+javascript");
+        final String input = TestUtils.corpus("markup!+css+javascript");
+        final String expected = TestUtils.dump(prism4j.tokenize(input, grammar));
+
+        final List<Prism4j.Node> nodes = prism4j.tokenizeLazy(input, grammar);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            final Callable<String> callable = () -> TestUtils.dump(nodes);
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(callable));
+            }
+            for (Future<String> future : futures) {
+                Assert.assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void max_nesting_depth() {
+        final Prism4j limited = new Prism4j(new GrammarLocatorAll(), false, 1);
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(limited, "markup!+css+javascript");
+        final String input = TestUtils.corpus("markup!+css+javascript");
+        Assert.assertEquals(
+                TestUtils.dump(limited.tokenize(input, grammar)),
+                TestUtils.dump(limited.tokenizeLazy(input, grammar)));
+    }
+}
@@ -0,0 +1,125 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+public class MappedTextTest {
+
+    private Prism4j prism4j;
+    private Path file;
+
+    @Before
+    public void before() throws IOException {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+        file = Files.createTempFile("prism4j", ".txt");
+    }
+
+    @After
+    public void after() throws IOException {
+        Files.delete(file);
+    }
+
+    @Test
+    public void same_result() throws IOException {
+        for (String folder : TestUtils.languageFolders()) {
+
+            final String[] grammars = TestUtils.folderGrammars(folder);
+            for (String name : grammars) {
+                prism4j.grammar(name);
+            }
+            final Prism4j.Grammar grammar = prism4j.grammar(grammars[0]);
+            Assert.assertNotNull(folder, grammar);
+
+            final String input = TestUtils.corpus(folder);
+            Files.write(file, input.getBytes(StandardCharsets.UTF_8));
+            final MappedText text = MappedText.map(file);
+
+            Assert.assertEquals(folder, input, text.toString());
+
+            final List<Prism4j.Node> nodes = prism4j.tokenize(text, grammar);
+            Assert.assertEquals(
+                    folder,
+                    TestUtils.dump(prism4j.tokenize(input, grammar)),
+                    TestUtils.dump(nodes));
+
+            // nodes reference mapped text
+            for (Prism4j.Node node : nodes) {
+                if (!node.isSyntax()) {
+                    Assert.assertSame(folder, text, ((TextImpl) node).source());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void multi_byte() throws IOException {
+
+        // surrogate pairs and multi-byte chars cross block bounds, some bytes are malformed
+        final Random random = new Random(42L);
+        final byte[] bytes;
+        {
+            final StringBuilder builder = new StringBuilder();
+            while (builder.length() < 5 * MappedText.BLOCK_LENGTH) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        builder.appendCodePoint(0x1F600 + random.nextInt(64));
+                        break;
+                    case 1:
+                        builder.append((char) (0x400 + random.nextInt(256)));
+                        break;
+                    case 2:
+                        builder.append((char) (0x4E00 + random.nextInt(1024)));
+                        break;
+                    default:
+                        builder.append((char) ('a' + random.nextInt(26)));
+                }
+            }
+            final byte[] encoded = builder.toString().getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < 16; i++) {
+                encoded[random.nextInt(encoded.length)] = (byte) 0xFF;
+            }
+            bytes = encoded;
+        }
+
+        assertText(bytes, StandardCharsets.UTF_8);
+        assertText(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void empty() throws IOException {
+        final MappedText text = MappedText.map(file);
+        Assert.assertEquals(0, text.length());
+        Assert.assertEquals("", text.toString());
+    }
+
+    private void assertText(@NotNull byte[] bytes, @NotNull Charset charset) throws IOException {
+
+        Files.write(file, bytes);
+
+        final String expected = new String(bytes, charset);
+        final MappedText text = MappedText.map(file, charset);
+
+        Assert.assertEquals(expected.length(), text.length());
+
+        // backwards, so each block is decoded again
+        for (int i = expected.length() - 1; i >= 0; i--) {
+            Assert.assertEquals(expected.charAt(i), text.charAt(i));
+        }
+
+        Assert.assertEquals(expected, text.toString());
+        Assert.assertEquals(
+                expected.substring(MappedText.BLOCK_LENGTH - 3, 2 * MappedText.BLOCK_LENGTH + 5),
+                text.subSequence(MappedText.BLOCK_LENGTH - 3, 2 * MappedText.BLOCK_LENGTH + 5).toString());
+    }
+}
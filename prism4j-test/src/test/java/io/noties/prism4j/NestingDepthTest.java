@@ -0,0 +1,167 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import static io.noties.prism4j.Prism4j.grammar;
+import static io.noties.prism4j.Prism4j.pattern;
+import static io.noties.prism4j.Prism4j.token;
+
+public class NestingDepthTest {
+
+    @Test
+    public void deep_nesting_small_stack() throws Throwable {
+
+        final int depth = 5000;
+        final String input = nestedInput(depth);
+        final Prism4j prism4j = new Prism4j(new GrammarLocatorAll());
+        final Prism4j.Grammar grammar = nestedGrammar();
+
+        final AtomicReference<Object> result = new AtomicReference<>();
+        final Thread thread = new Thread(null, () -> {
+            try {
+                final List<Prism4j.Node> nodes = prism4j.tokenize(input, grammar);
+                final TokenStream stream = prism4j.tokenizeToStream(input, grammar);
+                final TokenStream created = TokenStream.create(input, nodes);
+                final List<Prism4j.Node> cached = TokenizeCache.create(prism4j, 1, input.length())
+                        .tokenize(input, grammar);
+                result.set(new Object[]{nodes, stream, created, cached});
+            } catch (Throwable t) {
+                result.set(t);
+            }
+        }, "small-stack", 128 * 1024);
+        thread.start();
+        thread.join();
+
+        if (result.get() instanceof Throwable) {
+            throw (Throwable) result.get();
+        }
+
+        final Object[] array = (Object[]) result.get();
+        @SuppressWarnings("unchecked") final List<Prism4j.Node> nodes = (List<Prism4j.Node>) array[0];
+        Assert.assertEquals(depth, groupDepth(nodes));
+        Assert.assertEquals(depth, ((TokenStream) array[1]).size());
+        Assert.assertEquals(array[1].toString(), array[2].toString());
+        @SuppressWarnings("unchecked") final List<Prism4j.Node> cached = (List<Prism4j.Node>) array[3];
+        Assert.assertEquals(depth, groupDepth(cached));
+    }
+
+    @Test
+    public void max_nesting_depth() {
+
+        final String input = nestedInput(10);
+        final Prism4j.Grammar grammar = nestedGrammar();
+
+        // a group of each applied inside grammar and the one whose content is not tokenized
+        final Prism4j limited = new Prism4j(new GrammarLocatorAll(), false, 3);
+        final List<Prism4j.Node> nodes = limited.tokenize(input, grammar);
+        Assert.assertEquals(4, groupDepth(nodes));
+        Assert.assertEquals(input.length(), textLength(nodes));
+
+        final Prism4j.Syntax innermost = innermostGroup(nodes);
+        Assert.assertFalse(innermost.tokenized());
+        Assert.assertEquals(1, innermost.children().size());
+        Assert.assertFalse(innermost.children().get(0).isSyntax());
+        Assert.assertEquals(innermost.matchedString(), ((Prism4j.Text) innermost.children().get(0)).literal());
+
+        // inside grammars are not applied at all
+        final Prism4j none = new Prism4j(new GrammarLocatorAll(), false, 0);
+        Assert.assertEquals(1, groupDepth(none.tokenize(input, grammar)));
+
+        final Prism4j unlimited = new Prism4j(new GrammarLocatorAll());
+        Assert.assertEquals(10, groupDepth(unlimited.tokenize(input, grammar)));
+    }
+
+    @Test
+    public void max_nesting_depth_same_result() {
+        final Prism4j prism4j = new Prism4j(new GrammarLocatorAll());
+        final Prism4j limited = new Prism4j(new GrammarLocatorAll(), false, 64);
+        for (String folder : TestUtils.languageFolders()) {
+            final String input = TestUtils.corpus(folder);
+            Assert.assertEquals(
+                    folder,
+                    TestUtils.dump(prism4j.tokenize(input, TestUtils.folderGrammar(prism4j, folder))),
+                    TestUtils.dump(limited.tokenize(input, TestUtils.folderGrammar(limited, folder))));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negative_max_nesting_depth() {
+        new Prism4j(new GrammarLocatorAll(), false, -1);
+    }
+
+    // a group in square brackets, its content is tokenized with the same grammar
+    @NotNull
+    private static Prism4j.Grammar nestedGrammar() {
+        final List<Prism4j.Token> tokens = new ArrayList<>(1);
+        final Prism4j.Grammar grammar = grammar("nested", tokens);
+        tokens.add(token("group", pattern(
+                Pattern.compile("(\\[)[\\s\\S]*(?=\\])"), true, false, null, grammar)));
+        return grammar;
+    }
+
+    @NotNull
+    private static String nestedInput(int depth) {
+        final StringBuilder builder = new StringBuilder(depth * 2 + 1);
+        for (int i = 0; i < depth; i++) {
+            builder.append('[');
+        }
+        builder.append('x');
+        for (int i = 0; i < depth; i++) {
+            builder.append(']');
+        }
+        return builder.toString();
+    }
+
+    private static int groupDepth(@NotNull List<? extends Prism4j.Node> nodes) {
+        int depth = 0;
+        List<? extends Prism4j.Node> level = nodes;
+        while (true) {
+            Prism4j.Syntax group = null;
+            for (Prism4j.Node node : level) {
+                if (node.isSyntax()) {
+                    group = (Prism4j.Syntax) node;
+                }
+            }
+            if (group == null) {
+                return depth;
+            }
+            depth += 1;
+            level = group.children();
+        }
+    }
+
+    @NotNull
+    private static Prism4j.Syntax innermostGroup(@NotNull List<? extends Prism4j.Node> nodes) {
+        Prism4j.Syntax innermost = null;
+        List<? extends Prism4j.Node> level = nodes;
+        while (true) {
+            Prism4j.Syntax group = null;
+            for (Prism4j.Node node : level) {
+                if (node.isSyntax()) {
+                    group = (Prism4j.Syntax) node;
+                }
+            }
+            if (group == null) {
+                Assert.assertNotNull(innermost);
+                return innermost;
+            }
+            innermost = group;
+            level = group.children();
+        }
+    }
+
+    private static int textLength(@NotNull List<? extends Prism4j.Node> nodes) {
+        int length = 0;
+        for (Prism4j.Node node : nodes) {
+            length += node.textLength();
+        }
+        return length;
+    }
+}
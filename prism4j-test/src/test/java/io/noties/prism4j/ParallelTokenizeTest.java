@@ -0,0 +1,78 @@
+package io.noties.prism4j;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelTokenizeTest {
+
+    // enough for multiple chunks
+    private static final int LENGTH = ParallelTokenizer.MIN_CHUNK_LENGTH * 4 + 1;
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void same_as_tokenize() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String folder : TestUtils.languageFolders()) {
+                final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, folder);
+                final String input = TestUtils.corpus(folder, LENGTH);
+                Assert.assertEquals(
+                        folder,
+                        TestUtils.dump(prism4j.tokenize(input, grammar)),
+                        TestUtils.dump(prism4j.tokenizeParallel(input, grammar, pool)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void unclosed_comment() {
+        // comment that is started in the first chunk and never closed
+        final StringBuilder builder = new StringBuilder("var a = 1;\n/* ");
+        while (builder.length() < LENGTH) {
+            builder.append("var b = 'c';\n\n");
+        }
+        final String input = builder.toString();
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "javascript");
+        Assert.assertEquals(
+                TestUtils.dump(prism4j.tokenize(input, grammar)),
+                TestUtils.dump(prism4j.tokenizeParallel(input, grammar)));
+    }
+
+    @Test
+    public void bounds() {
+
+        // small text is not split
+        Assert.assertArrayEquals(new int[]{0, 10}, ParallelTokenizer.bounds("0123456789", 8));
+
+        final StringBuilder builder = new StringBuilder();
+        while (builder.length() < LENGTH) {
+            builder.append("line\n");
+            if (builder.length() % 7 == 0) {
+                builder.append('\n');
+            }
+        }
+        final String text = builder.toString();
+
+        final int[] bounds = ParallelTokenizer.bounds(text, 2);
+        Assert.assertEquals(5, bounds.length);
+        Assert.assertEquals(0, bounds[0]);
+        Assert.assertEquals(text.length(), bounds[bounds.length - 1]);
+
+        for (int i = 1; i < bounds.length - 1; i++) {
+            Assert.assertTrue(bounds[i] > bounds[i - 1]);
+            // right after a blank line
+            Assert.assertEquals("\n\n", text.substring(bounds[i] - 2, bounds[i]));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class PrefilterTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void literal() {
+        final Prefilter prefilter = prefilter("(^|[^\\\\])\\/\\*[\\s\\S]*?(?:\\*\\/|$)");
+        Assert.assertNotNull(prefilter);
+        Assert.assertEquals("/*", prefilter.literal);
+
+        final String text = "a / b * c /* d";
+        Assert.assertFalse(prefilter.mayMatch(text, 0, 10));
+        // region must contain the whole literal
+        Assert.assertFalse(prefilter.mayMatch(text, 0, 11));
+        Assert.assertTrue(prefilter.mayMatch(text, 0, 12));
+        Assert.assertTrue(prefilter.mayMatch(text, 10, 14));
+        Assert.assertFalse(prefilter.mayMatch(text, 11, 14));
+    }
+
+    @Test
+    public void literal_across_groups() {
+        assertLiteral("<!--", "<!--[\\s\\S]*?-->");
+        assertLiteral("\\begin{", "(\\\\begin\\{((?:verbatim|lstlisting)\\*?)\\})[\\s\\S]*?(?=\\\\end\\{\\2\\})");
+        assertLiteral("ab", "(?:ab|ab)c?");
+        assertLiteral("abc", "x?(?:a)(?:bc)");
+        assertLiteral("b+", "a*b\\+c?");
+    }
+
+    @Test
+    public void chars() {
+        final Prefilter prefilter = prefilter("([\"'])(?:\\\\(?:\\r\\n|[\\s\\S])|(?!\\1)[^\\\\\\r\\n])*\\1");
+        Assert.assertNotNull(prefilter);
+        Assert.assertNull(prefilter.literal);
+
+        Assert.assertFalse(prefilter.mayMatch("var a = b;", 0, 10));
+        Assert.assertTrue(prefilter.mayMatch("var a = 'b';", 0, 12));
+        Assert.assertTrue(prefilter.mayMatch("var a = \"b\";", 0, 12));
+        Assert.assertFalse(prefilter.mayMatch("'var a = b';", 1, 10));
+    }
+
+    @Test
+    public void chars_alternation() {
+        final Prefilter prefilter = prefilter("\\b(?:if|else|while)\\b");
+        Assert.assertNotNull(prefilter);
+        Assert.assertFalse(prefilter.mayMatch("for (;;) {}", 0, 11));
+        Assert.assertTrue(prefilter.mayMatch("for (;;) { e }", 0, 14));
+    }
+
+    @Test
+    public void non_ascii() {
+        final Prefilter prefilter = prefilter("[_$a-z\\xA0-\\uFFFF][$\\w\\xA0-\\uFFFF]*(?=\\s*\\()");
+        Assert.assertNotNull(prefilter);
+        Assert.assertFalse(prefilter.mayMatch("1 + 2", 0, 5));
+        Assert.assertTrue(prefilter.mayMatch("1 + \u00E9", 0, 5));
+    }
+
+    @Test
+    public void case_insensitive() {
+
+        final Prefilter doctype = prefilter("<!DOCTYPE[\\s\\S]+?>", Pattern.CASE_INSENSITIVE);
+        Assert.assertNotNull(doctype);
+        Assert.assertEquals("<!", doctype.literal);
+
+        final Prefilter letter = prefilter("x", Pattern.CASE_INSENSITIVE);
+        Assert.assertNotNull(letter);
+        Assert.assertTrue(letter.mayMatch("X", 0, 1));
+        Assert.assertTrue(letter.mayMatch("x", 0, 1));
+        Assert.assertFalse(letter.mayMatch("y", 0, 1));
+
+        final Prefilter range = prefilter("[x-z]", Pattern.CASE_INSENSITIVE);
+        Assert.assertNotNull(range);
+        Assert.assertTrue(range.mayMatch("Z", 0, 1));
+        Assert.assertTrue(range.mayMatch("z", 0, 1));
+        Assert.assertFalse(range.mayMatch("W", 0, 1));
+
+        // KELVIN SIGN
+        final Prefilter unicode = prefilter("k", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        Assert.assertNotNull(unicode);
+        Assert.assertTrue(unicode.mayMatch("\u212A", 0, 1));
+    }
+
+    @Test
+    public void no_filter() {
+        final String[] patterns = {
+                ".+",
+                "[\\s\\S]",
+                "a*",
+                "(?:a|)",
+                "(?i)abc",
+                "(?i:abc)",
+                "[a[b]]",
+                "[a-z&&[^b]]",
+                "\\1",
+                "(?=a)",
+                "\\b",
+                "\\0101",
+                "\\N{LATIN SMALL LETTER A}",
+                "\uD83D\uDE00?"
+        };
+        for (String pattern : patterns) {
+            Assert.assertNull(pattern, prefilter(pattern));
+        }
+        Assert.assertNull(prefilter("a", Pattern.COMMENTS));
+        Assert.assertNull(prefilter("a", Pattern.LITERAL));
+    }
+
+    @Test
+    public void cached() {
+        final Prism4j.Pattern pattern = Prism4j.pattern(Pattern.compile("//"));
+        Assert.assertSame(Prefilter.of(pattern), Prefilter.of(pattern));
+    }
+
+    @Test
+    public void never_rejects_match() {
+
+        final Random random = new Random(42L);
+
+        for (String folder : TestUtils.languageFolders()) {
+
+            final String[] grammars = TestUtils.folderGrammars(folder);
+            final Set<Prism4j.Grammar> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (String name : grammars) {
+                final Prism4j.Grammar grammar = prism4j.grammar(name);
+                if (grammar != null) {
+                    check(folder, grammar, TestUtils.corpus(folder), random, visited);
+                }
+            }
+        }
+    }
+
+    private static void check(
+            @NotNull String folder,
+            @NotNull Prism4j.Grammar grammar,
+            @NotNull String text,
+            @NotNull Random random,
+            @NotNull Set<Prism4j.Grammar> visited) {
+
+        if (!visited.add(grammar)) {
+            return;
+        }
+
+        for (Prism4j.Token token : grammar.tokens()) {
+            for (Prism4j.Pattern pattern : token.patterns()) {
+
+                final Prefilter prefilter = Prefilter.of(pattern);
+                if (prefilter != null) {
+                    final Matcher matcher = pattern.regex().matcher(text);
+                    for (int i = 0; i < 200; i++) {
+                        final int start = random.nextInt(text.length());
+                        final int end = Math.min(text.length(), start + 1 + random.nextInt(i % 2 == 0 ? 16 : 256));
+                        if (!prefilter.mayMatch(text, start, end)) {
+                            matcher.region(start, end);
+                            Assert.assertFalse(
+                                    folder + ", " + pattern.regex().pattern() + " [" + start + ", " + end + ")",
+                                    matcher.find());
+                        }
+                    }
+                }
+
+                final Prism4j.Grammar inside = pattern.inside();
+                if (inside != null) {
+                    check(folder, inside, text, random, visited);
+                }
+            }
+        }
+    }
+
+    private static void assertLiteral(@NotNull String expected, @NotNull String pattern) {
+        final Prefilter prefilter = prefilter(pattern);
+        Assert.assertNotNull(pattern, prefilter);
+        Assert.assertEquals(pattern, expected, prefilter.literal);
+    }
+
+    @Nullable
+    private static Prefilter prefilter(@NotNull String pattern) {
+        return prefilter(pattern, 0);
+    }
+
+    @Nullable
+    private static Prefilter prefilter(@NotNull String pattern, int flags) {
+        return Prefilter.of(Prism4j.pattern(Pattern.compile(pattern, flags)));
+    }
+}
@@ -5,8 +5,27 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+        BatchTokenizeTest.class,
+        FrozenGrammarTest.class,
+        GrammarLocatorTest.class,
         GrammarUtilsTest.class,
-        ToStringTest.class
+        IncrementalTest.class,
+        JfrEventsTest.class,
+        KeywordMatcherTest.class,
+        LazyTokenizeTest.class,
+        MappedTextTest.class,
+        NestingDepthTest.class,
+        ParallelTokenizeTest.class,
+        PrefilterTest.class,
+        ProgressiveTokenizeTest.class,
+        ReaderTokenizeTest.class,
+        ScanPatternsTest.class,
+        ToStringTest.class,
+        TokenizeBudgetTest.class,
+        TokenizeProfilerTest.class,
+        TokenizeCacheTest.class,
+        TokenSinkTest.class,
+        TokenStreamTest.class
 })
 public class Prism4jTestSuite {
 }
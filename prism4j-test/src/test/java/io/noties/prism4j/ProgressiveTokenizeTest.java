@@ -0,0 +1,84 @@
+package io.noties.prism4j;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ProgressiveTokenizeTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void same_result() throws Exception {
+
+        // coarse nodes are the same as if no inside grammar is applied
+        final Prism4j coarse = new Prism4j(new GrammarLocatorAll(), false, 0);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (String folder : TestUtils.languageFolders()) {
+                final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, folder);
+                final String input = TestUtils.corpus(folder);
+                final ProgressiveResult result = prism4j.tokenizeProgressive(input, grammar, executor);
+                Assert.assertEquals(
+                        folder,
+                        TestUtils.dump(coarse.tokenize(input, TestUtils.folderGrammar(coarse, folder))),
+                        TestUtils.dump(result.coarse()));
+                Assert.assertEquals(
+                        folder,
+                        TestUtils.dump(prism4j.tokenize(input, grammar)),
+                        TestUtils.dump(result.refined().get(1L, TimeUnit.MINUTES)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void refined_in_background() throws Exception {
+
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "markup!+css+javascript");
+        final String input = TestUtils.corpus("markup!+css+javascript");
+
+        final List<Runnable> tasks = new ArrayList<>();
+        final ProgressiveResult result = prism4j.tokenizeProgressive(input, grammar, tasks::add);
+
+        Assert.assertFalse(result.refined().isDone());
+        Assert.assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+
+        final List<Prism4j.Node> refined = result.refined().getNow(null);
+        Assert.assertNotNull(refined);
+        for (Prism4j.Node node : refined) {
+            if (node instanceof LazySyntax) {
+                Assert.assertTrue(((LazySyntax) node).isTokenized());
+            }
+        }
+    }
+
+    @Test
+    public void cancelled() {
+
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "markup!+css+javascript");
+        final String input = TestUtils.corpus("markup!+css+javascript");
+
+        final List<Runnable> tasks = new ArrayList<>();
+        final ProgressiveResult result = prism4j.tokenizeProgressive(input, grammar, tasks::add);
+
+        Assert.assertTrue(result.refined().cancel(false));
+        tasks.get(0).run();
+        Assert.assertTrue(result.refined().isCancelled());
+    }
+}
@@ -0,0 +1,211 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+
+public class ReaderTokenizeTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void same_result() throws IOException {
+        for (String folder : TestUtils.languageFolders()) {
+
+            final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, folder);
+
+            // input is a few windows long
+            final String input = TestUtils.corpus(folder, 32 * 1024);
+
+            final Events expected = new Events();
+            expected.onChunk(input);
+            prism4j.tokenize(input, grammar, expected);
+
+            // result is the same only if no token is longer than half of the window,
+            // in css repeated declarations without braces are matched as a single selector
+            if (expected.maxSyntaxLength > 4 * 1024) {
+                continue;
+            }
+
+            final Events actual = new Events();
+            prism4j.tokenize(new StringReader(input), grammar, actual, 8 * 1024);
+
+            Assert.assertEquals(folder, expected.toString(), actual.toString());
+            Assert.assertTrue(folder, actual.maxChunkLength <= 8 * 1024);
+        }
+    }
+
+    @Test
+    public void bounded_window() throws IOException {
+
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "git");
+        final String diff = TestUtils.corpus("git") + "\n";
+
+        // 16MB of input without keeping it
+        final int length = 16 * 1024 * 1024;
+        final Reader reader = new Reader() {
+
+            private int position;
+
+            @Override
+            public int read(@NotNull char[] buffer, int offset, int count) {
+                if (position == length) {
+                    return -1;
+                }
+                final int read = Math.min(count, length - position);
+                for (int i = 0; i < read; i++) {
+                    buffer[offset + i] = diff.charAt((position + i) % diff.length());
+                }
+                position += read;
+                return read;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        final int[] counts = new int[2];
+        prism4j.tokenize(reader, grammar, new TokenSink() {
+            @Override
+            public void onChunk(@NotNull CharSequence chunk) {
+                Assert.assertTrue(chunk.length() <= 2 * 1024);
+                counts[0] += chunk.length();
+            }
+
+            @Override
+            public void onText(int start, int end) {
+            }
+
+            @Override
+            public void onEnterSyntax(@NotNull String type, @Nullable String alias, int start, int end) {
+                counts[1] += 1;
+            }
+
+            @Override
+            public void onExitSyntax() {
+            }
+        }, 2 * 1024);
+
+        Assert.assertEquals(length, counts[0]);
+        Assert.assertTrue(counts[1] > 0);
+    }
+
+    @Test
+    public void long_token() throws IOException {
+
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "clike");
+
+        // a comment longer than the window is cut, but all the input is sent
+        final StringBuilder builder = new StringBuilder("a = 1;\n/*");
+        for (int i = 0; i < 1000; i++) {
+            builder.append(" comment\n");
+        }
+        builder.append("*/\nb = 2;\n");
+        final String input = builder.toString();
+
+        final Events events = new Events();
+        prism4j.tokenize(new StringReader(input), grammar, events, 256);
+
+        Assert.assertEquals(input, events.text.toString());
+        Assert.assertTrue(events.maxChunkLength <= 256);
+    }
+
+    @Test
+    public void word_is_not_cut() throws IOException {
+
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "sql");
+
+        // no line start in the first half of the window, the middle is inside a word
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 32; i++) {
+            builder.append('a');
+        }
+        builder.append("select ");
+        for (int i = 0; i < 61; i++) {
+            builder.append('b');
+        }
+        final String input = builder.toString();
+
+        final Events expected = new Events();
+        expected.onChunk(input);
+        prism4j.tokenize(input, grammar, expected);
+
+        final Events actual = new Events();
+        prism4j.tokenize(new StringReader(input), grammar, actual, 64);
+
+        Assert.assertEquals(input, expected.toString());
+        Assert.assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void cut() {
+        final List<Prism4j.Node> text = Collections.<Prism4j.Node>singletonList(new TextImpl("a b\nc d", 0, 7));
+        // the last line start
+        Assert.assertEquals(4, ReaderTokenizer.cut("a b\nc d", text, 6));
+        // the last whitespace
+        Assert.assertEquals(2, ReaderTokenizer.cut("a b\nc d", text, 3));
+        // the first whitespace after the limit
+        Assert.assertEquals(4, ReaderTokenizer.cut("abc\ndef", Collections.<Prism4j.Node>singletonList(new TextImpl("abc\ndef", 0, 7)), 2));
+        // a single word
+        Assert.assertEquals(3, ReaderTokenizer.cut("abcdef", Collections.<Prism4j.Node>singletonList(new TextImpl("abcdef", 0, 6)), 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void window_too_small() throws IOException {
+        prism4j.tokenize(new StringReader("a"), TestUtils.folderGrammar(prism4j, "clike"), new Events(), 1);
+    }
+
+    // events with absolute positions
+    private static class Events implements TokenSink {
+
+        final StringBuilder builder = new StringBuilder();
+        final StringBuilder text = new StringBuilder();
+
+        int offset;
+        int maxChunkLength;
+        int maxSyntaxLength;
+
+        @Override
+        public void onChunk(@NotNull CharSequence chunk) {
+            offset = text.length();
+            text.append(chunk);
+            maxChunkLength = Math.max(maxChunkLength, chunk.length());
+        }
+
+        @Override
+        public void onText(int start, int end) {
+            // text can be split by chunks
+            builder.append(text, offset + start, offset + end);
+        }
+
+        @Override
+        public void onEnterSyntax(@NotNull String type, @Nullable String alias, int start, int end) {
+            maxSyntaxLength = Math.max(maxSyntaxLength, end - start);
+            builder.append('<').append(type).append(' ').append(offset + start).append(',').append(offset + end).append('>');
+        }
+
+        @Override
+        public void onExitSyntax() {
+            builder.append("</>");
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+}
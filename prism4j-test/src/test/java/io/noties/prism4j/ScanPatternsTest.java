@@ -0,0 +1,184 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ScanPatternsTest {
+
+    private Prism4j prism4j;
+    private Prism4j scanning;
+
+    @Before
+    public void before() {
+        final GrammarLocator locator = new GrammarLocatorAll();
+        prism4j = new Prism4j(locator);
+        scanning = new Prism4j(locator, true);
+    }
+
+    @Test
+    public void region_independent() {
+        final String[] patterns = {
+                "\"(?:\\\\.|[^\\\\\"\\r\\n])*\"",
+                "[{}\\[\\];(),.:]",
+                "\\/\\*[\\s\\S]*?\\*\\/",
+                "(a)b\\1",
+                "[\\s\\S]+"
+        };
+        for (String pattern : patterns) {
+            Assert.assertTrue(pattern, Prefilter.isRegionIndependent(Prism4j.pattern(Pattern.compile(pattern))));
+        }
+    }
+
+    @Test
+    public void not_region_independent() {
+        final String[] patterns = {
+                "^a",
+                "a$",
+                "\\ba",
+                "a\\B",
+                "\\Aa",
+                "a(?=b)",
+                "(?<!b)a",
+                "(?>ab|a)c",
+                "a++",
+                "a\\R",
+                "a*",
+                "(?i)a"
+        };
+        for (String pattern : patterns) {
+            Assert.assertFalse(pattern, Prefilter.isRegionIndependent(Prism4j.pattern(Pattern.compile(pattern))));
+        }
+    }
+
+    @Test
+    public void same_as_regex() {
+
+        final Random random = new Random(42L);
+
+        for (String folder : TestUtils.languageFolders()) {
+
+            final String text = TestUtils.corpus(folder);
+            final Set<Prism4j.Grammar> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            for (String name : TestUtils.folderGrammars(folder)) {
+                final Prism4j.Grammar grammar = prism4j.grammar(name);
+                if (grammar != null) {
+                    check(grammar, text, random, visited);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void same_as_tokenize() {
+        for (String folder : TestUtils.languageFolders()) {
+            final String[] grammars = TestUtils.folderGrammars(folder);
+            for (String name : grammars) {
+                prism4j.grammar(name);
+            }
+            final Prism4j.Grammar grammar = prism4j.grammar(grammars[0]);
+            Assert.assertNotNull(folder, grammar);
+
+            // at least one full scan long
+            final String input = TestUtils.corpus(folder, MatchContext.SCAN_LENGTH);
+            Assert.assertEquals(
+                    folder,
+                    TestUtils.dump(prism4j.tokenize(input, grammar)),
+                    TestUtils.dump(scanning.tokenize(input, grammar)));
+        }
+    }
+
+    @Test
+    public void absent_pattern() {
+
+        final StringBuilder builder = new StringBuilder();
+        while (builder.length() < 16 * MatchContext.SCAN_LENGTH) {
+            builder.append(TestUtils.corpus("clike"));
+        }
+        final String text = builder.toString();
+
+        final Pattern absent = Pattern.compile("@@[a-z]+@@");
+        final Pattern last = Pattern.compile("@@end@@");
+        final Prism4j.Grammar grammar = Prism4j.grammar("absent",
+                Prism4j.token("absent", Prism4j.pattern(absent)),
+                Prism4j.token("last", Prism4j.pattern(last)));
+
+        final String input = text + "@@end@@";
+        final MatchContext context = new MatchContext(input, true);
+        final CompiledGrammar compiled = context.compile(grammar);
+        Assert.assertTrue(compiled.regionIndependent(0));
+
+        // forward searches in small regions, the last one finds the match at the end of the text
+        for (int start = 0; start < input.length(); start += 100) {
+            final int end = Math.min(input.length(), start + 200);
+            final Matcher matcher = absent.matcher(input).region(start, end);
+            final boolean found = matcher.find();
+            Assert.assertEquals(found, context.search(compiled, 0, start, end));
+            if (found) {
+                Assert.assertEquals(matcher.start(), context.matchStart);
+                Assert.assertEquals(matcher.end(), context.matchEnd);
+            }
+        }
+        Assert.assertTrue(context.search(compiled, 1, input.length() - 200, input.length()));
+        Assert.assertEquals(text.length(), context.matchStart);
+
+        Assert.assertEquals(
+                TestUtils.dump(prism4j.tokenize(input, grammar)),
+                TestUtils.dump(scanning.tokenize(input, grammar)));
+    }
+
+    private static void check(
+            @NotNull Prism4j.Grammar grammar,
+            @NotNull String text,
+            @NotNull Random random,
+            @NotNull Set<Prism4j.Grammar> visited) {
+
+        if (!visited.add(grammar)) {
+            return;
+        }
+
+        final MatchContext context = new MatchContext(text, true);
+        final CompiledGrammar compiled = context.compile(grammar);
+
+        for (int pattern = 0; pattern < compiled.patternCount; pattern++) {
+
+            if (compiled.regionIndependent(pattern)) {
+
+                final Matcher matcher = compiled.regex[pattern].matcher(text);
+
+                // mostly forward searches in small regions (as tokenization does) with random jumps
+                int start = 0;
+                for (int i = 0; i < 500; i++) {
+                    start = i % 50 == 0
+                            ? random.nextInt(text.length())
+                            : Math.min(text.length(), start + random.nextInt(64));
+                    final int end = Math.min(text.length(), start + random.nextInt(i % 7 == 0 ? 2048 : 64));
+
+                    final String message = compiled.regex[pattern].pattern() + " [" + start + ", " + end + ")";
+
+                    matcher.region(start, end);
+                    final boolean found = matcher.find();
+                    Assert.assertEquals(message, found, context.search(compiled, pattern, start, end));
+                    if (found) {
+                        Assert.assertEquals(message, matcher.start(), context.matchStart);
+                        Assert.assertEquals(message, matcher.end(), context.matchEnd);
+                    }
+                }
+            }
+
+            final Prism4j.Grammar inside = compiled.insides[pattern];
+            if (inside != null) {
+                check(inside, text, random, visited);
+            }
+        }
+    }
+}
@@ -10,14 +10,21 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 import java.util.stream.Collectors;
 
+import io.noties.prism4j.annotations.PrismBundle;
+
 import static net.javacrumbs.jsonunit.JsonAssert.assertJsonEquals;
 
+/**
+ * Also generates {@code GrammarLocatorAll} (with all languages) that is shared by tests
+ */
+@PrismBundle(includeAll = true, grammarLocatorClassName = ".GrammarLocatorAll")
 public abstract class TestUtils {
 
     private static final String DELIMITER = "-{52}";
@@ -42,6 +49,92 @@ public abstract class TestUtils {
         }
     }
 
+    /**
+     * @return names of all folders inside `languages` test resources folder (for example `css!+css-extras`)
+     */
+    @NotNull
+    public static List<String> languageFolders() {
+        final InputStream inputStream = TestUtils.class.getClassLoader().getResourceAsStream("languages/");
+        Assert.assertNotNull(inputStream);
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(inputStream, StandardCharsets.UTF_8)
+        )) {
+            return br.lines()
+                    .filter(s -> !s.isBlank())
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param folder name of a folder inside `languages` test resources folder
+     * @return names of grammars that are required by the folder, first one is the root grammar
+     */
+    @NotNull
+    public static String[] folderGrammars(@NotNull String folder) {
+        return folder.split("!?\\+");
+    }
+
+    /**
+     * Loads all grammars that are required by the folder (so the root grammar is modified by them)
+     *
+     * @param folder name of a folder inside `languages` test resources folder
+     * @return root grammar of the folder
+     */
+    @NotNull
+    public static Prism4j.Grammar folderGrammar(@NotNull Prism4j prism4j, @NotNull String folder) {
+        final String[] grammars = folderGrammars(folder);
+        for (String name : grammars) {
+            prism4j.grammar(name);
+        }
+        final Prism4j.Grammar grammar = prism4j.grammar(grammars[0]);
+        Assert.assertNotNull(folder, grammar);
+        return grammar;
+    }
+
+    /**
+     * @param folder name of a folder inside `languages` test resources folder
+     * @return inputs of all test cases inside the folder joined with an empty line
+     */
+    @NotNull
+    public static String corpus(@NotNull String folder) {
+        return corpus(folder, 0);
+    }
+
+    /**
+     * Same as {@link #corpus(String)}, but each input is repeated in place so that
+     * the result is at least {@code minLength} long. Repeating whole corpus instead would
+     * let a quote left open by one test case run through all of the next copy,
+     * which is too much for java.util.regex recursion with the default thread stack
+     *
+     * @param folder    name of a folder inside `languages` test resources folder
+     * @param minLength minimal length of the result
+     */
+    @NotNull
+    public static String corpus(@NotNull String folder, int minLength) {
+        final List<String> inputs = new ArrayList<>();
+        int length = 0;
+        for (Object files : testFiles(folder)) {
+            for (Object file : (Collection<?>) files) {
+                // not using `readCase` as not all files have expected output and description
+                final String raw = resourceToString((String) file);
+                final String input = raw.split(DELIMITER)[0].trim() + "\n\n";
+                inputs.add(input);
+                length += input.length();
+            }
+        }
+        final int copies = length == 0 ? 1 : Math.max(1, (minLength + length - 1) / length);
+        final StringBuilder builder = new StringBuilder(length * copies);
+        for (String input : inputs) {
+            for (int i = 0; i < copies; i++) {
+                builder.append(input);
+            }
+        }
+        return builder.toString();
+    }
+
     public static class Case {
 
         public final String input;
@@ -122,6 +215,39 @@ public abstract class TestUtils {
         return array;
     }
 
+    /**
+     * Creates a textual representation of nodes that includes all the information that nodes carry
+     * (can be used to check that different ways of tokenization produce identical results)
+     */
+    @NotNull
+    public static String dump(@NotNull List<? extends Prism4j.Node> nodes) {
+        final StringBuilder builder = new StringBuilder();
+        dump(builder, nodes, 0);
+        return builder.toString();
+    }
+
+    private static void dump(@NotNull StringBuilder builder, @NotNull List<? extends Prism4j.Node> nodes, int depth) {
+        for (Prism4j.Node node : nodes) {
+            for (int i = 0; i < depth; i++) {
+                builder.append("  ");
+            }
+            if (node.isSyntax()) {
+                final Prism4j.Syntax syntax = (Prism4j.Syntax) node;
+                builder.append("syntax type=").append(syntax.type())
+                        .append(" alias=").append(syntax.alias())
+                        .append(" greedy=").append(syntax.greedy())
+                        .append(" tokenized=").append(syntax.tokenized())
+                        .append(" length=").append(syntax.textLength())
+                        .append(" `").append(syntax.matchedString()).append("`\n");
+                dump(builder, syntax.children(), depth + 1);
+            } else {
+                final Prism4j.Text text = (Prism4j.Text) node;
+                builder.append("text length=").append(text.textLength())
+                        .append(" `").append(text.literal()).append("`\n");
+            }
+        }
+    }
+
     private static String resourceToString(String file) {
         ClassLoader classLoader = TestUtils.class.getClassLoader();
         try (InputStream is = classLoader.getResourceAsStream(file)) {
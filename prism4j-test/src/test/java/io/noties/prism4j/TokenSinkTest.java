@@ -0,0 +1,134 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TokenSinkTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void same_as_tokenize() {
+        for (String folder : TestUtils.languageFolders()) {
+
+            final String[] grammars = TestUtils.folderGrammars(folder);
+            for (String name : grammars) {
+                prism4j.grammar(name);
+            }
+
+            final Prism4j.Grammar grammar = prism4j.grammar(grammars[0]);
+            Assert.assertNotNull(folder, grammar);
+
+            final String input = TestUtils.corpus(folder);
+
+            final StringBuilder expected = new StringBuilder();
+            new Html(input, expected).visit(prism4j.tokenize(input, grammar));
+
+            final StringBuilder actual = new StringBuilder();
+            prism4j.tokenize(input, grammar, new HtmlSink(input, actual));
+
+            Assert.assertEquals(folder, expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void events() {
+        final Prism4j.Grammar grammar = prism4j.grammar("json");
+        Assert.assertNotNull(grammar);
+
+        final StringBuilder builder = new StringBuilder();
+        prism4j.tokenize("{\"a\": 1}", grammar, new TokenSink() {
+            @Override
+            public void onText(int start, int end) {
+                builder.append("text(").append(start).append(',').append(end).append(')');
+            }
+
+            @Override
+            public void onEnterSyntax(@NotNull String type, @Nullable String alias, int start, int end) {
+                builder.append(type).append('(').append(start).append(',').append(end).append(")[");
+            }
+
+            @Override
+            public void onExitSyntax() {
+                builder.append(']');
+            }
+        });
+
+        Assert.assertEquals(
+                "punctuation(0,1)[text(0,1)]" +
+                        "property(1,4)[text(1,4)]" +
+                        "operator(4,5)[text(4,5)]" +
+                        "text(5,6)" +
+                        "number(6,7)[text(6,7)]" +
+                        "punctuation(7,8)[text(7,8)]",
+                builder.toString());
+    }
+
+    private static class HtmlSink implements TokenSink {
+
+        private final CharSequence source;
+        private final StringBuilder out;
+
+        HtmlSink(@NotNull CharSequence source, @NotNull StringBuilder out) {
+            this.source = source;
+            this.out = out;
+        }
+
+        @Override
+        public void onText(int start, int end) {
+            out.append(source, start, end);
+        }
+
+        @Override
+        public void onEnterSyntax(@NotNull String type, @Nullable String alias, int start, int end) {
+            span(out, type, alias);
+        }
+
+        @Override
+        public void onExitSyntax() {
+            out.append("</span>");
+        }
+    }
+
+    private static class Html extends AbsVisitor {
+
+        private final CharSequence source;
+        private final StringBuilder out;
+        private int position;
+
+        Html(@NotNull CharSequence source, @NotNull StringBuilder out) {
+            this.source = source;
+            this.out = out;
+        }
+
+        @Override
+        protected void visitText(@NotNull Prism4j.Text text) {
+            Assert.assertEquals(text.literal(), source.subSequence(position, position + text.textLength()).toString());
+            out.append(text.literal());
+            position += text.textLength();
+        }
+
+        @Override
+        protected void visitSyntax(@NotNull Prism4j.Syntax syntax) {
+            span(out, syntax.type(), syntax.alias());
+            visit(syntax.children());
+            out.append("</span>");
+        }
+    }
+
+    private static void span(@NotNull StringBuilder out, @NotNull String type, @Nullable String alias) {
+        out.append("<span class=\"token ").append(type);
+        if (alias != null) {
+            out.append(' ').append(alias);
+        }
+        out.append("\">");
+    }
+}
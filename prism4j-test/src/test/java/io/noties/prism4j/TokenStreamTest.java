@@ -0,0 +1,92 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+public class TokenStreamTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void same_as_tokenize() {
+        for (String folder : TestUtils.languageFolders()) {
+
+            final String[] grammars = TestUtils.folderGrammars(folder);
+            for (String name : grammars) {
+                prism4j.grammar(name);
+            }
+
+            final Prism4j.Grammar grammar = prism4j.grammar(grammars[0]);
+            Assert.assertNotNull(folder, grammar);
+
+            final String input = TestUtils.corpus(folder);
+            final List<Prism4j.Node> nodes = prism4j.tokenize(input, grammar);
+            final TokenStream stream = prism4j.tokenizeToStream(input, grammar);
+
+            Assert.assertSame(input, stream.source());
+
+            final int size = assertNodes(folder, stream, nodes, 0, 0, 0);
+            Assert.assertEquals(folder, size, stream.size());
+        }
+    }
+
+    @Test
+    public void names_interned() {
+        final Prism4j.Grammar grammar = prism4j.grammar("json");
+        Assert.assertNotNull(grammar);
+
+        final TokenStream stream = prism4j.tokenizeToStream("[1, 2, 3]", grammar);
+        // `[`, `1`, `,`, `2`, `,`, `3`, `]`
+        Assert.assertEquals(7, stream.size());
+        Assert.assertEquals(2, stream.nameCount());
+        Assert.assertEquals(stream.typeId(0), stream.typeId(2));
+        Assert.assertEquals(stream.typeId(1), stream.typeId(3));
+        Assert.assertEquals("punctuation", stream.type(0));
+        Assert.assertEquals("number", stream.name(stream.typeId(1)));
+        Assert.assertEquals(TokenStream.NO_ALIAS, stream.aliasId(1));
+        Assert.assertNull(stream.alias(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void index_out_of_bounds() {
+        final Prism4j.Grammar grammar = prism4j.grammar("json");
+        Assert.assertNotNull(grammar);
+        prism4j.tokenizeToStream("1", grammar).start(1);
+    }
+
+    // returns index of the next stream entry
+    private static int assertNodes(
+            @NotNull String folder,
+            @NotNull TokenStream stream,
+            @NotNull List<? extends Prism4j.Node> nodes,
+            int index,
+            int position,
+            int depth) {
+        for (Prism4j.Node node : nodes) {
+            final int end = position + node.textLength();
+            if (node.isSyntax()) {
+                final Prism4j.Syntax syntax = (Prism4j.Syntax) node;
+                final String message = folder + ", index: " + index;
+                Assert.assertEquals(message, position, stream.start(index));
+                Assert.assertEquals(message, end, stream.end(index));
+                Assert.assertEquals(message, syntax.type(), stream.type(index));
+                Assert.assertEquals(message, syntax.alias(), stream.alias(index));
+                Assert.assertEquals(message, depth, stream.depth(index));
+                Assert.assertEquals(message, syntax.matchedString(),
+                        stream.source().subSequence(stream.start(index), stream.end(index)).toString());
+                index = assertNodes(folder, stream, syntax.children(), index + 1, position, depth + 1);
+            }
+            position = end;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,125 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static io.noties.prism4j.Prism4j.grammar;
+import static io.noties.prism4j.Prism4j.pattern;
+import static io.noties.prism4j.Prism4j.token;
+
+public class TokenizeBudgetTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void enough_budget() {
+        for (String folder : TestUtils.languageFolders()) {
+            final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, folder);
+            final String input = TestUtils.corpus(folder);
+            final TokenizeResult result = prism4j.tokenize(
+                    input,
+                    grammar,
+                    TokenizeBudget.timeout(1L, TimeUnit.HOURS).withSteps(Long.MAX_VALUE));
+            Assert.assertTrue(folder, result.isComplete());
+            Assert.assertNull(folder, result.exhaustedToken());
+            Assert.assertNull(folder, result.exhaustedPattern());
+            Assert.assertEquals(
+                    folder,
+                    TestUtils.dump(prism4j.tokenize(input, grammar)),
+                    TestUtils.dump(result.nodes()));
+        }
+    }
+
+    @Test
+    public void steps_partial() {
+
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "javascript");
+        final String input = TestUtils.corpus("javascript");
+
+        final TokenizeResult result = prism4j.tokenize(input, grammar, TokenizeBudget.steps(1000L));
+        Assert.assertFalse(result.isComplete());
+
+        final Prism4j.Token token = result.exhaustedToken();
+        final Prism4j.Pattern pattern = result.exhaustedPattern();
+        Assert.assertNotNull(token);
+        Assert.assertNotNull(pattern);
+        Assert.assertTrue(token.patterns().contains(pattern));
+
+        // the whole text is still covered
+        Assert.assertEquals(input.length(), textLength(result.nodes()));
+
+        // steps do not depend on time, so result is the same
+        Assert.assertEquals(
+                TestUtils.dump(result.nodes()),
+                TestUtils.dump(prism4j.tokenize(input, grammar, TokenizeBudget.steps(1000L)).nodes()));
+    }
+
+    @Test
+    public void catastrophic_backtracking() {
+
+        // java regex engine handles `(a+)+b`, but not a deeper nesting
+        final Prism4j.Grammar grammar = grammar(
+                "test",
+                token("word", pattern(Pattern.compile("abc"))),
+                token("bad", pattern(Pattern.compile("((a+)+)+b"))));
+
+        final StringBuilder builder = new StringBuilder("abc ");
+        for (int i = 0; i < 64; i++) {
+            builder.append('a');
+        }
+        // a match after a long run that cannot match
+        final String input = builder.append("c ab").toString();
+
+        final long started = System.nanoTime();
+        final TokenizeResult result = prism4j.tokenize(input, grammar, TokenizeBudget.timeout(50L, TimeUnit.MILLISECONDS));
+        final long elapsed = System.nanoTime() - started;
+
+        Assert.assertTrue(String.valueOf(elapsed), elapsed < TimeUnit.SECONDS.toNanos(5L));
+        Assert.assertFalse(result.isComplete());
+
+        final Prism4j.Token token = result.exhaustedToken();
+        Assert.assertNotNull(token);
+        Assert.assertEquals("bad", token.name());
+
+        // tokens before the interrupted one are matched
+        final List<Prism4j.Node> nodes = result.nodes();
+        Assert.assertTrue(nodes.get(0).isSyntax());
+        Assert.assertEquals("word", ((Prism4j.Syntax) nodes.get(0)).type());
+        Assert.assertEquals(input.length(), textLength(nodes));
+    }
+
+    @Test
+    public void negative() {
+        try {
+            TokenizeBudget.steps(-1L);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("-1"));
+        }
+        try {
+            TokenizeBudget.timeout(-1L, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("-1"));
+        }
+    }
+
+    private static int textLength(@NotNull List<? extends Prism4j.Node> nodes) {
+        int length = 0;
+        for (Prism4j.Node node : nodes) {
+            length += node.textLength();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,172 @@
+package io.noties.prism4j;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TokenizeCacheTest {
+
+    private Prism4j prism4j;
+    private Prism4j.Grammar json;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+        json = prism4j.grammar("json");
+        Assert.assertNotNull(json);
+    }
+
+    @Test
+    public void same_as_tokenize() {
+        final TokenizeCache cache = TokenizeCache.create(prism4j, 4, Integer.MAX_VALUE);
+        for (String folder : TestUtils.languageFolders()) {
+
+            final String[] grammars = TestUtils.folderGrammars(folder);
+            for (String name : grammars) {
+                prism4j.grammar(name);
+            }
+
+            final Prism4j.Grammar grammar = prism4j.grammar(grammars[0]);
+            Assert.assertNotNull(folder, grammar);
+
+            final String input = TestUtils.corpus(folder);
+            final String expected = TestUtils.dump(prism4j.tokenize(input, grammar));
+            Assert.assertEquals(folder, expected, TestUtils.dump(cache.tokenize(input, grammar)));
+            Assert.assertEquals(folder, expected, TestUtils.dump(cache.tokenize(input, grammar)));
+        }
+    }
+
+    @Test
+    public void hit_miss() {
+        final TokenizeCache cache = TokenizeCache.create(prism4j, 4, 1024);
+
+        final List<Prism4j.Node> first = cache.tokenize("[1, 2]", json);
+        Assert.assertEquals(0, cache.hitCount());
+        Assert.assertEquals(1, cache.missCount());
+
+        // equal, but not the same string
+        final List<Prism4j.Node> second = cache.tokenize(new StringBuilder("[1, 2]").toString(), json);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.hitCount());
+        Assert.assertEquals(1, cache.missCount());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(6, cache.weight());
+    }
+
+    @Test
+    public void grammar_identity() {
+        final TokenizeCache cache = TokenizeCache.create(prism4j, 4, 1024);
+        final Prism4j.Grammar frozen = GrammarUtils.freeze(json);
+
+        final List<Prism4j.Node> first = cache.tokenize("[1]", json);
+        final List<Prism4j.Node> second = cache.tokenize("[1]", frozen);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, cache.missCount());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void hash_collision() {
+        // "Aa" and "BB" have the same hash code
+        Assert.assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        final TokenizeCache cache = TokenizeCache.create(prism4j, 4, 1024);
+        final List<Prism4j.Node> aa = cache.tokenize("Aa", json);
+        final List<Prism4j.Node> bb = cache.tokenize("BB", json);
+        Assert.assertNotSame(aa, bb);
+        Assert.assertEquals("BB", ((Prism4j.Text) bb.get(0)).literal());
+        Assert.assertEquals(0, cache.hitCount());
+    }
+
+    @Test
+    public void evict_by_entries() {
+        final TokenizeCache cache = TokenizeCache.create(prism4j, 2, 1024);
+        final List<Prism4j.Node> one = cache.tokenize("1", json);
+        cache.tokenize("2", json);
+        // `1` is now most recently used
+        Assert.assertSame(one, cache.tokenize("1", json));
+        cache.tokenize("3", json);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.evictionCount());
+        Assert.assertSame(one, cache.tokenize("1", json));
+
+        // `2` must have been evicted
+        final long misses = cache.missCount();
+        cache.tokenize("2", json);
+        Assert.assertEquals(misses + 1, cache.missCount());
+    }
+
+    @Test
+    public void evict_by_weight() {
+        final TokenizeCache cache = TokenizeCache.create(prism4j, 16, 10);
+        cache.tokenize("[1, 2]", json);
+        cache.tokenize("[3, 4]", json);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(6, cache.weight());
+        Assert.assertEquals(1, cache.evictionCount());
+
+        // bigger than max weight, not cached
+        cache.tokenize("[1, 2, 3, 4]", json);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, cache.evictionCount());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.weight());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable_result() {
+        final TokenizeCache cache = TokenizeCache.create(prism4j, 4, 1024);
+        cache.tokenize("[1]", json).clear();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable_children() {
+        final TokenizeCache cache = TokenizeCache.create(prism4j, 4, 1024);
+        final Prism4j.Syntax syntax = (Prism4j.Syntax) cache.tokenize("[1]", json).get(0);
+        ((List<?>) syntax.children()).clear();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void illegal_bounds() {
+        TokenizeCache.create(prism4j, 0, 1024);
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+
+        final String folder = "markup!+css+javascript";
+        for (String name : TestUtils.folderGrammars(folder)) {
+            prism4j.grammar(name);
+        }
+        final Prism4j.Grammar grammar = GrammarUtils.freeze(prism4j.grammar("markup"));
+        final String input = TestUtils.corpus(folder);
+        final String expected = TestUtils.dump(prism4j.tokenize(input, grammar));
+
+        final TokenizeCache cache = TokenizeCache.create(prism4j, 4, Integer.MAX_VALUE);
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executorService.submit(() -> TestUtils.dump(cache.tokenize(input, grammar))));
+            }
+            for (Future<String> future : futures) {
+                Assert.assertEquals(expected, future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(32, cache.hitCount() + cache.missCount());
+    }
+}
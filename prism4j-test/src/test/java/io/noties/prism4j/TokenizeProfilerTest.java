@@ -0,0 +1,133 @@
+package io.noties.prism4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+public class TokenizeProfilerTest {
+
+    private Prism4j prism4j;
+
+    @Before
+    public void before() {
+        prism4j = new Prism4j(new GrammarLocatorAll());
+    }
+
+    @Test
+    public void disabled_by_default() {
+        Assert.assertNull(prism4j.profiler());
+    }
+
+    @Test
+    public void same_result() {
+        for (String folder : TestUtils.languageFolders()) {
+            final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, folder);
+            final String input = TestUtils.corpus(folder);
+            final String expected = TestUtils.dump(prism4j.tokenize(input, grammar));
+            prism4j.setProfiler(TokenizeProfiler.create());
+            try {
+                Assert.assertEquals(folder, expected, TestUtils.dump(prism4j.tokenize(input, grammar)));
+            } finally {
+                prism4j.setProfiler(null);
+            }
+        }
+    }
+
+    @Test
+    public void entries() {
+
+        final Prism4j.Grammar grammar = TestUtils.folderGrammar(prism4j, "markup!+css+javascript");
+        final String input = TestUtils.corpus("markup!+css") + TestUtils.corpus("markup!+css+javascript");
+
+        final TokenizeProfiler profiler = TokenizeProfiler.create();
+        prism4j.setProfiler(profiler);
+        Assert.assertSame(profiler, prism4j.profiler());
+
+        final List<Prism4j.Node> nodes = prism4j.tokenize(input, grammar);
+        prism4j.tokenize(input, grammar, new TokenStream.Builder(input));
+        prism4j.setProfiler(null);
+
+        // not profiled
+        prism4j.tokenize(input, grammar);
+
+        Assert.assertEquals(2L, profiler.calls());
+
+        final List<TokenizeProfiler.Entry> entries = profiler.entries();
+        Assert.assertFalse(entries.isEmpty());
+
+        final Set<String> grammars = new HashSet<>();
+        long hits = 0L;
+        long previousNanos = Long.MAX_VALUE;
+        for (TokenizeProfiler.Entry entry : entries) {
+            grammars.add(entry.grammar());
+            Assert.assertTrue(entry.toString(), entry.hits() <= entry.searches());
+            Assert.assertEquals(entry.toString(), entry.searches() - entry.hits(), entry.misses());
+            // most expensive first
+            Assert.assertTrue(entry.nanos() <= previousNanos);
+            previousNanos = entry.nanos();
+            hits += entry.hits();
+        }
+
+        Assert.assertTrue(grammars.toString(), grammars.contains("markup"));
+        Assert.assertTrue(grammars.toString(), grammars.contains("css"));
+        Assert.assertTrue(grammars.toString(), grammars.contains("javascript"));
+        Assert.assertTrue(grammars.toString(), grammars.contains("javascript/inside"));
+
+        // every syntax node is created by a found match (a greedy match can be rejected)
+        Assert.assertTrue(hits >= 2 * syntaxCount(nodes));
+
+        final String report = profiler.report();
+        Assert.assertTrue(report, report.contains("searches"));
+        Assert.assertTrue(report, report.contains("markup/tag: "));
+
+        profiler.clear();
+        Assert.assertEquals(0L, profiler.calls());
+        Assert.assertTrue(profiler.entries().isEmpty());
+    }
+
+    @Test
+    public void shared_token() {
+
+        // the same token instance in two grammars
+        final Prism4j.Token word = Prism4j.token("word", Prism4j.pattern(Pattern.compile("\\w+")));
+        final Prism4j.Grammar first = Prism4j.grammar("first", word);
+        final Prism4j.Grammar second = Prism4j.grammar("second",
+                Prism4j.token("number", Prism4j.pattern(Pattern.compile("\\d+"))),
+                word);
+
+        final TokenizeProfiler profiler = TokenizeProfiler.create();
+        prism4j.setProfiler(profiler);
+        prism4j.tokenize("first text", first);
+        prism4j.tokenize("second text 42", second);
+        prism4j.setProfiler(null);
+
+        final Set<String> words = new HashSet<>();
+        for (TokenizeProfiler.Entry entry : profiler.entries()) {
+            if ("word".equals(entry.token())) {
+                Assert.assertSame(word.patterns().get(0), entry.pattern());
+                words.add(entry.grammar());
+            }
+        }
+
+        final Set<String> expected = new HashSet<>();
+        expected.add("first");
+        expected.add("second");
+        Assert.assertEquals(expected, words);
+    }
+
+    private static int syntaxCount(@NotNull List<? extends Prism4j.Node> nodes) {
+        int count = 0;
+        for (Prism4j.Node node : nodes) {
+            if (node.isSyntax()) {
+                count += 1 + syntaxCount(((Prism4j.Syntax) node).children());
+            }
+        }
+        return count;
+    }
+}